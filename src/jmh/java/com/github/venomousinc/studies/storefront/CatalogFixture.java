@@ -0,0 +1,95 @@
+package com.github.venomousinc.studies.storefront;
+
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds {@link Storefront}s of a given size for the benchmarks.
+ * <p>
+ * Catalogs are generated from a fixed seed, so every fork and every run measures the same data.
+ */
+
+public final class CatalogFixture {
+
+    private static final ProductType[] TYPES = ProductType.values();
+    private static final long SEED = 0x5F0C_A7A1L;
+
+    /**
+     * How Products are spread over the {@link ProductType}s.
+     */
+    public enum Distribution {
+        /** Every ProductType holds roughly the same number of Products. */
+        UNIFORM,
+        /** Each ProductType holds about half as many Products as the one before it. */
+        SKEWED,
+        /** Every Product is the same ProductType. */
+        SINGLE;
+
+        ProductType pick(Random random) {
+            switch(this) {
+                case SINGLE:
+                    return TYPES[0];
+                case SKEWED:
+                    int ordinal = 0;
+                    while(ordinal < TYPES.length - 1 && random.nextBoolean()) {
+                        ordinal++;
+                    }
+                    return TYPES[ordinal];
+                default:
+                    return TYPES[random.nextInt(TYPES.length)];
+            }
+        }
+    }
+
+    private CatalogFixture() { }
+
+    /**
+     * @param size The number of Products.
+     * @param distribution
+     * @return A Storefront in which a quarter of the Products are discounted and half are stock-tracked.
+     */
+    public static Storefront create(int size, Distribution distribution) {
+        Random random = new Random(SEED);
+        Storefront storefront = new Storefront("Benchmark Mart");
+        List<ProductItem> items = new ArrayList<>(size);
+        int[] stock = new int[size];
+
+        for(int i = 0; i < size; i++) {
+            ProductItem item = new ProductItem("Product " + i, "Benchmark product number " + i,
+                    distribution.pick(random), BigDecimal.valueOf(10 + random.nextInt(100_000), 2));
+            if(random.nextInt(4) == 0)
+                item.setDiscount(BigDecimal.valueOf(5 + random.nextInt(45)));
+            stock[i] = random.nextBoolean() ? 1_000_000 : -1;
+            items.add(item);
+        }
+        storefront.getInventory().createProducts(items, stock);
+        return storefront;
+    }
+
+    /**
+     * @param storefront
+     * @param count
+     * @param random
+     * @return {@code count} Products of the Storefront, chosen at random.
+     */
+    public static ProductItem[] sample(Storefront storefront, int count, Random random) {
+        List<ProductItem> products = storefront.getInventory().getProducts();
+        ProductItem[] sample = new ProductItem[count];
+        for(int i = 0; i < count; i++) {
+            sample[i] = products.get(random.nextInt(products.size()));
+        }
+        return sample;
+    }
+
+    /**
+     * @return The ProductTypes in stock, in the order the benchmarks cycle through them.
+     */
+    public static ProductType[] stockedTypes(Storefront storefront) {
+        return storefront.getInventory().getStockTypes().toArray(new ProductType[0]);
+    }
+}
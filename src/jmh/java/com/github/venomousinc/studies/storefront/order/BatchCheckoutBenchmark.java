@@ -0,0 +1,92 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import com.github.venomousinc.studies.storefront.CatalogFixture;
+import com.github.venomousinc.studies.storefront.Storefront;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.user.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking out a batch of baskets with {@link BatchCheckout}, by the number of threads it may use.
+ * <p>
+ * Baskets are filled before each invocation. Nothing is journaled, so this measures pricing, rendering and
+ * committing stock, which should scale with the threads up to the cores available.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BatchCheckoutBenchmark {
+
+    @Param({ "1", "2", "4", "8" })
+    public int parallelism;
+
+    @Param({ "10000" })
+    public int baskets;
+
+    @Param({ "10000" })
+    public int catalogSize;
+
+    private Storefront storefront;
+    private ForkJoinPool pool;
+    private BatchCheckout checkout;
+    private List<User> users;
+    private Random random;
+
+    @Setup
+    public void setup() {
+        storefront = CatalogFixture.create(catalogSize, CatalogFixture.Distribution.UNIFORM);
+        pool = new ForkJoinPool(parallelism);
+        checkout = new BatchCheckout(pool, null);
+        random = new Random(baskets);
+        users = new ArrayList<>(baskets);
+        for(int i = 0; i < baskets; i++) {
+            users.add(new User("benchmark" + i, "benchmark"));
+        }
+    }
+
+    /**
+     * Fills every basket with one to eight Products.
+     */
+    @Setup(Level.Invocation)
+    public void fill() {
+        for(User user : users) {
+            for(ProductItem product : CatalogFixture.sample(storefront, 1 + random.nextInt(8), random)) {
+                user.addToBasket(storefront.getInventory(), product, 1);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public BatchSummary checkout() throws IOException {
+        return checkout.checkout(storefront.getName(), users, new StringWriter(baskets * 256));
+    }
+}
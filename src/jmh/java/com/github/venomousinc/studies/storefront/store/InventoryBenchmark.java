@@ -0,0 +1,128 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import com.github.venomousinc.studies.storefront.CatalogFixture;
+import com.github.venomousinc.studies.storefront.Storefront;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries against a {@link ProductInventory}: listing a category, the set of categories in stock,
+ * and looking a Product up by serial number.
+ * <p>
+ * The {@code readWhileDiscounting} group measures the same reads while another thread keeps publishing changes.
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class InventoryBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int catalogSize;
+
+    @Param({ "UNIFORM", "SKEWED", "SINGLE" })
+    public CatalogFixture.Distribution distribution;
+
+    private ProductInventory inventory;
+    private ProductType[] types;
+    private long[] serials;
+    private ProductItem[] discounted;
+
+    @Setup
+    public void setup() {
+        Storefront storefront = CatalogFixture.create(catalogSize, distribution);
+        inventory = storefront.getInventory();
+        types = CatalogFixture.stockedTypes(storefront);
+
+        ProductItem[] sample = CatalogFixture.sample(storefront, 1024, new Random(catalogSize));
+        serials = new long[sample.length];
+        for(int i = 0; i < sample.length; i++) {
+            serials[i] = sample[i].SERIAL_NUMBER;
+        }
+        discounted = sample;
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup
+        public void setup() {
+            next = (int) Thread.currentThread().getId() * 31;
+        }
+
+        int next() {
+            return next++ & Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Lists one category and reads every Product in it, as the category menu does.
+     */
+    @Benchmark
+    public void getProductsByType(Cursor cursor, Blackhole blackhole) {
+        List<ProductItem> products = inventory.getProducts(types[cursor.next() % types.length]);
+        for(int i = 0; i < products.size(); i++) {
+            blackhole.consume(products.get(i));
+        }
+    }
+
+    @Benchmark
+    public EnumSet<ProductType> getStockTypes() {
+        return inventory.getStockTypes();
+    }
+
+    @Benchmark
+    public ProductItem getProductBySerial(Cursor cursor) {
+        return inventory.getProduct(serials[cursor.next() & (serials.length - 1)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void getProductsByTypeContended(Cursor cursor, Blackhole blackhole) {
+        getProductsByType(cursor, blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public EnumSet<ProductType> getStockTypesContended() {
+        return inventory.getStockTypes();
+    }
+
+    @Benchmark
+    @Group("readWhileDiscounting")
+    @GroupThreads(3)
+    public void reader(Cursor cursor, Blackhole blackhole) {
+        getProductsByType(cursor, blackhole);
+    }
+
+    @Benchmark
+    @Group("readWhileDiscounting")
+    @GroupThreads(1)
+    public boolean discounter(Cursor cursor) {
+        int next = cursor.next();
+        return inventory.setDiscount(discounted[next & (discounted.length - 1)], BigDecimal.valueOf(next % 50));
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import com.github.venomousinc.studies.storefront.CatalogFixture;
+import com.github.venomousinc.studies.storefront.Storefront;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a {@link ProductItem}'s price, as every listing and basket total does.
+ * <p>
+ * Items are visited in a random order over the whole catalog, so larger catalogs also show the cost of cache misses.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PricingBenchmark {
+
+    @Param({ "100", "10000", "1000000" })
+    public int catalogSize;
+
+    private ProductItem[] items;
+
+    @Setup
+    public void setup() {
+        Storefront storefront = CatalogFixture.create(catalogSize, CatalogFixture.Distribution.UNIFORM);
+        items = CatalogFixture.sample(storefront, 4096, new Random(catalogSize));
+    }
+
+    /**
+     * Each thread walks the sample from its own starting point.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup
+        public void setup() {
+            next = (int) Thread.currentThread().getId() * 31;
+        }
+
+        ProductItem next(ProductItem[] items) {
+            return items[next++ & (items.length - 1)];
+        }
+    }
+
+    @Benchmark
+    public BigDecimal getPrice(Cursor cursor) {
+        return cursor.next(items).getPrice(true, true);
+    }
+
+    @Benchmark
+    public long getPriceMinorUnits(Cursor cursor) {
+        return cursor.next(items).getPriceMinorUnits(true, true);
+    }
+
+    @Benchmark
+    public String getFormattedPrice(Cursor cursor) {
+        return cursor.next(items).getFormattedPrice();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long getPriceMinorUnitsContended(Cursor cursor) {
+        return cursor.next(items).getPriceMinorUnits(true, true);
+    }
+}
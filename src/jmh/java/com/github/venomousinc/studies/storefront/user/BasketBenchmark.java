@@ -0,0 +1,82 @@
+package com.github.venomousinc.studies.storefront.user;
+
+import com.github.venomousinc.studies.storefront.CatalogFixture;
+import com.github.venomousinc.studies.storefront.Storefront;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and changing a {@link User}'s basket totals.
+ * <p>
+ * Every thread has its own User, as every session does.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BasketBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int basketSize;
+
+    @Param({ "10000" })
+    public int catalogSize;
+
+    private User user;
+    private ProductItem[] products;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Storefront storefront = CatalogFixture.create(catalogSize, CatalogFixture.Distribution.UNIFORM);
+        products = CatalogFixture.sample(storefront, basketSize, new Random(basketSize));
+
+        user = new User("benchmark", "benchmark");
+        for(ProductItem product : products) {
+            user.addToBasket(product);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal getBasketTotal() {
+        return user.getBasketTotal(true);
+    }
+
+    @Benchmark
+    public long getBasketTotalMinorUnits() {
+        return user.getBasketTotalMinorUnits(true);
+    }
+
+    @Benchmark
+    public String getFormattedBasketTotal() {
+        return user.getFormattedBasketTotal(true);
+    }
+
+    /**
+     * Adds one more of a Product already in the basket and takes it out again, updating the totals twice.
+     */
+    @Benchmark
+    public long addAndRemove() {
+        ProductItem product = products[next++ % products.length];
+        user.addToBasket(product, 1);
+        user.removeFromBasket(product, 1);
+        return user.getBasketTotalMinorUnits(true);
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.venomousinc.studies.storefront.load;
+
+import com.github.venomousinc.studies.storefront.Storefront;
+import com.github.venomousinc.studies.storefront.metrics.LatencyHistogram;
+import com.github.venomousinc.studies.storefront.order.OrderJournal;
+import com.github.venomousinc.studies.storefront.store.MappedCatalog;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates concurrent shoppers against a {@link Storefront}, then reports throughput and latency per {@link Operation}.
+ * <p>
+ * Every shopper has its own thread and {@link com.github.venomousinc.studies.storefront.user.User}, and either picks
+ * operations from a mix ({@link MixShopper}) or replays a session recorded as Main's console input ({@link ScriptShopper}).
+ * Shoppers wait for each operation before thinking and making the next, so latency is that seen by each shopper,
+ * and throughput falls as the store slows down. Results from the warmup are thrown away.
+ * <pre>
+ *   gradle loadTest -PloadArgs="shoppers=200 think=50 duration=60 mix=70:25:5"
+ *   gradle loadTest -PloadArgs="shoppers=50 script=session.txt journal=/tmp/load.journal"
+ * </pre>
+ */
+
+public final class LoadGenerator {
+
+    public enum Operation {
+        /** Listing a page of a category. */
+        BROWSE,
+        /** Reserving a Product and adding it to the basket. */
+        ADD,
+        /** Rendering the receipt, journaling the order and committing the basket's stock. */
+        CHECKOUT
+    }
+
+    /**
+     * Products listed at once, as in Main.
+     */
+    static final int PAGE_SIZE = 20;
+
+    private static final String USAGE = "Usage: LoadGenerator [shoppers=100] [duration=30] [warmup=10] [think=100]"
+            + " [mix=70:25:5 | script=<file>] [catalog=<file> | products=100000] [journal=<file>]";
+
+    private final Storefront storefront;
+    private final OrderJournal journal;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] failures = new LongAdder[Operation.values().length];
+
+    private volatile boolean running;
+    private volatile boolean recording;
+
+    /**
+     * @param storefront
+     * @param journal Checkouts are journaled here, or null to skip journaling.
+     */
+    public LoadGenerator(Storefront storefront, OrderJournal journal) {
+        this.storefront = storefront;
+        this.journal = journal;
+        for(int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram(TimeUnit.NANOSECONDS);
+            failures[i] = new LongAdder();
+        }
+    }
+
+    public Storefront getStorefront() {
+        return storefront;
+    }
+
+    public OrderJournal getJournal() {
+        return journal;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Records an operation that started at {@code start}, from {@link System#nanoTime()}, and has just finished.
+     */
+    void record(Operation operation, long start, boolean success) {
+        if(!recording)
+            return;
+
+        latencies[operation.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if(!success)
+            failures[operation.ordinal()].increment();
+    }
+
+    /**
+     * Runs every shopper on its own thread through the warmup and then the measurement, and waits for them to finish.
+     * @param shoppers
+     * @param warmupSeconds
+     * @param durationSeconds
+     * @return The length of the measurement in nanoseconds.
+     * @throws InterruptedException
+     */
+    public long run(List<? extends Shopper> shoppers, long warmupSeconds, long durationSeconds) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(shoppers.size());
+        running = true;
+        for(int i = 0; i < shoppers.size(); i++) {
+            Thread thread = new Thread(shoppers.get(i), "shopper-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        for(int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            failures[i].reset();
+        }
+        recording = true;
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        recording = false;
+        long elapsed = System.nanoTime() - start;
+
+        running = false;
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Prints the count, failures, throughput and latency percentiles in microseconds of each {@link Operation}.
+     * @param out
+     * @param elapsedNanos The length of the measurement, from {@link #run(List, long, long)}.
+     */
+    public void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.format("%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "failed", "ops/s", "mean us", "p50 us", "p99 us", "p99.9 us", "max us");
+        for(Operation operation : Operation.values()) {
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            out.format("%-10s %10d %8d %10.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    operation, histogram.getCount(), failures[operation.ordinal()].sum(), histogram.getCount() / seconds,
+                    micros(histogram.getMean(TimeUnit.NANOSECONDS)),
+                    micros(histogram.getPercentile(50, TimeUnit.NANOSECONDS)),
+                    micros(histogram.getPercentile(99, TimeUnit.NANOSECONDS)),
+                    micros(histogram.getPercentile(99.9, TimeUnit.NANOSECONDS)),
+                    micros(histogram.getMax(TimeUnit.NANOSECONDS)));
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for(String arg : args) {
+            int equals = arg.indexOf('=');
+            if(equals <= 0) {
+                System.out.println(USAGE);
+                return;
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        int shopperCount = Integer.parseInt(options.getOrDefault("shoppers", "100"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "30"));
+        long warmup = Long.parseLong(options.getOrDefault("warmup", "10"));
+        long think = Long.parseLong(options.getOrDefault("think", "100"));
+
+        Storefront storefront = options.containsKey("catalog")
+                ? MappedCatalog.open(Paths.get(options.get("catalog"))).toStorefront()
+                : generate(Integer.parseInt(options.getOrDefault("products", "100000")));
+        OrderJournal journal = options.containsKey("journal") ? new OrderJournal(Paths.get(options.get("journal"))) : null;
+
+        try {
+            LoadGenerator generator = new LoadGenerator(storefront, journal);
+            List<Shopper> shoppers = new ArrayList<>(shopperCount);
+            if(options.containsKey("script")) {
+                SessionScript script = SessionScript.load(Paths.get(options.get("script")));
+                for(int i = 0; i < shopperCount; i++) {
+                    shoppers.add(new ScriptShopper(generator, i, think, script));
+                }
+                System.out.format("Replaying %s with %d shoppers%n", script, shopperCount);
+            } else {
+                String mix = options.getOrDefault("mix", "70:25:5");
+                int[] weights = parseMix(mix);
+                for(int i = 0; i < shopperCount; i++) {
+                    shoppers.add(new MixShopper(generator, i, think, weights));
+                }
+                System.out.format("Running mix %s (browse:add:checkout) with %d shoppers%n", mix, shopperCount);
+            }
+            System.out.format("%d Products, %dms mean think time, %ds warmup, %ds measured%n",
+                    storefront.getInventory().getSnapshot().size(), think, warmup, duration);
+
+            long elapsed = generator.run(shoppers, warmup, duration);
+            generator.report(System.out, elapsed);
+        } finally {
+            if(journal != null)
+                journal.close();
+        }
+    }
+
+    /**
+     * Generates the same catalog on every run, so runs can be compared. Each {@link ProductType} holds about half as
+     * many Products as the one before it, a quarter of the Products are discounted and half are stock-tracked.
+     * @param size The number of Products.
+     * @return
+     */
+    static Storefront generate(int size) {
+        ProductType[] types = ProductType.values();
+        Random random = new Random(size);
+        Storefront storefront = new Storefront("Load Test Mart");
+        List<ProductItem> items = new ArrayList<>(size);
+
+        for(int i = 0; i < size; i++) {
+            int ordinal = 0;
+            while(ordinal < types.length - 1 && random.nextBoolean()) {
+                ordinal++;
+            }
+            ProductItem item = new ProductItem("Product " + i, "Load test product number " + i, types[ordinal],
+                    BigDecimal.valueOf(10 + random.nextInt(100_000), 2));
+            if(random.nextInt(4) == 0)
+                item.setDiscount(BigDecimal.valueOf(5 + random.nextInt(45)));
+            items.add(item);
+        }
+        int[] stock = new int[size];
+        for(int i = 0; i < size; i++) {
+            stock[i] = random.nextBoolean() ? 1_000_000 : -1;
+        }
+        storefront.getInventory().createProducts(items, stock);
+        return storefront;
+    }
+
+    /**
+     * @param mix The weight of each {@link Operation} in order, separated by colons, e.g. {@code 70:25:5}.
+     * @return The weights by ordinal.
+     */
+    static int[] parseMix(String mix) {
+        String[] parts = mix.split(":");
+        if(parts.length != Operation.values().length)
+            throw new IllegalArgumentException("The mix needs a weight for each of " + Arrays.toString(Operation.values()) + ": " + mix);
+
+        int[] weights = new int[parts.length];
+        for(int i = 0; i < parts.length; i++) {
+            weights[i] = Integer.parseInt(parts[i]);
+            if(weights[i] < 0)
+                throw new IllegalArgumentException("Weights can't be negative: " + mix);
+        }
+        return weights;
+    }
+}
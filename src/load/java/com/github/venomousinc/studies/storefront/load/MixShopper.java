@@ -0,0 +1,79 @@
+package com.github.venomousinc.studies.storefront.load;
+
+import com.github.venomousinc.studies.storefront.store.ProductPage;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+
+/**
+ * Picks each step at random from a mix of {@link LoadGenerator.Operation}s.
+ * <p>
+ * Browsing turns the page or picks another stocked category, adding picks a Product from the page last listed,
+ * so shoppers behave like someone at the console rather than sampling the whole catalog.
+ * A shopper with nothing to add or check out browses or adds first.
+ */
+
+public class MixShopper extends Shopper {
+
+    private final int[] cumulativeWeights;
+    private final ProductType[] stockTypes;
+
+    private ProductType productType;
+    private ProductPage page;
+
+    /**
+     * @param generator
+     * @param id
+     * @param thinkMillis
+     * @param weights The weight of each {@link LoadGenerator.Operation}, by ordinal.
+     */
+    public MixShopper(LoadGenerator generator, int id, long thinkMillis, int[] weights) {
+        super(generator, id, thinkMillis);
+        this.cumulativeWeights = new int[weights.length];
+        int total = 0;
+        for(int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+        if(total <= 0)
+            throw new IllegalArgumentException("The mix needs at least one operation");
+        this.stockTypes = generator.getStorefront().getInventory().getStockTypes().toArray(new ProductType[0]);
+    }
+
+    @Override
+    protected void step() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int ordinal = 0;
+        while(pick >= cumulativeWeights[ordinal]) {
+            ordinal++;
+        }
+        LoadGenerator.Operation operation = LoadGenerator.Operation.values()[ordinal];
+
+        switch(operation) {
+            case BROWSE:
+                browse();
+                break;
+            case ADD:
+                add();
+                break;
+            case CHECKOUT:
+                if(!checkout())
+                    add();
+                break;
+        }
+    }
+
+    private void browse() {
+        if(page != null && page.hasNext() && random.nextBoolean()) {
+            page = browse(productType, page.getNextOffset());
+        } else {
+            productType = stockTypes[random.nextInt(stockTypes.length)];
+            page = browse(productType, 0);
+        }
+    }
+
+    private void add() {
+        if(page == null || page.getItems().isEmpty())
+            browse();
+        if(!page.getItems().isEmpty())
+            add(page.getItems().get(random.nextInt(page.getItems().size())));
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.venomousinc.studies.storefront.load;
+
+import com.github.venomousinc.studies.storefront.store.ProductPage;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+
+/**
+ * Replays a {@link SessionScript} through the same states as {@link com.github.venomousinc.studies.storefront.Main},
+ * starting it over once it checks out, exits or runs out of input.
+ * <p>
+ * Each step is one input, with the think time between inputs. Like Main, choosing a category, adding a Product or
+ * turning the page lists the page again, so one input can make more than one operation.
+ */
+
+public class ScriptShopper extends Shopper {
+
+    /**
+     * The category override code, which lists every Product.
+     */
+    private static final int EVERY_CATEGORY = 999;
+
+    private static final ProductType[] TYPES = ProductType.values();
+
+    private final SessionScript script;
+    private int position;
+
+    private int selector = -1;
+    private int offset;
+    private ProductPage page;
+
+    public ScriptShopper(LoadGenerator generator, int id, long thinkMillis, SessionScript script) {
+        super(generator, id, thinkMillis);
+        this.script = script;
+    }
+
+    @Override
+    protected void step() {
+        for(int inputs = 0; inputs <= script.size(); inputs++) {
+            if(position == script.size())
+                restart();
+
+            Integer number = script.getNumber(position);
+            String command = script.get(position++);
+
+            if(number == null) {
+                if(command.equals("checkout")) {
+                    if(checkout()) {
+                        restart();
+                        return;
+                    }
+                    user.clearBasket();
+                } else if(command.equals("exit")) {
+                    restart();
+                }
+                continue;
+            }
+
+            if(selector == -1) {
+                selector = number;
+                offset = 0;
+                if(selector != EVERY_CATEGORY && (selector < 0 || selector >= TYPES.length)) {
+                    selector = -1;
+                    continue;
+                }
+            } else {
+                int productID = number - page.getOffset();
+                if(productID >= 0 && productID < page.getItems().size()) {
+                    add(page.getItems().get(productID));
+                } else if(number == -2) {
+                    offset = page.hasNext() ? page.getNextOffset() : 0;
+                } else if(number == -1) {
+                    selector = -1;
+                    return;
+                }
+            }
+            list();
+            return;
+        }
+    }
+
+    private void list() {
+        page = browse(selector != EVERY_CATEGORY ? TYPES[selector] : null, offset);
+        if(page.getTotal() == 0)
+            selector = -1;
+    }
+
+    /**
+     * Main ends the session at the end of its input, abandoning the basket.
+     */
+    private void restart() {
+        user.clearBasket();
+        position = 0;
+        selector = -1;
+        page = null;
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.venomousinc.studies.storefront.load;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A shopping session recorded as the console input of {@link com.github.venomousinc.studies.storefront.Main},
+ * e.g. the file given to it with {@code < session.txt}, for {@link ScriptShopper}s to replay.
+ * <p>
+ * Input is read as Main reads it, as whitespace-separated numbers and commands, signed in as the admin override:
+ * <pre>
+ * 3        choose category 3, 999 for every category
+ * 0 5      add the Products listed at 0 and 5
+ * -2       the next page
+ * -1       back to the categories
+ * checkout
+ * </pre>
+ * Commands other than {@code checkout} and {@code exit} are skipped, as Main skips them.
+ * Lines starting with {@code #} are comments, which Main would not accept.
+ */
+
+public final class SessionScript {
+
+    public final String NAME;
+
+    private final List<String> tokens;
+
+    private SessionScript(String name, List<String> tokens) {
+        this.NAME = name;
+        this.tokens = tokens;
+    }
+
+    /**
+     * @param path
+     * @return The script, named after the file.
+     * @throws IOException If the file can't be read or holds no input.
+     */
+    public static SessionScript load(Path path) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                for(String token : line.split("\\s+")) {
+                    tokens.add(token.toLowerCase());
+                }
+            }
+        }
+        if(tokens.isEmpty())
+            throw new IOException(path + ": no input to replay");
+        return new SessionScript(path.getFileName().toString(), Collections.unmodifiableList(tokens));
+    }
+
+    /**
+     * @return The number of inputs, each a number or a command.
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * @param index
+     * @return The input as Main would read it.
+     */
+    String get(int index) {
+        return tokens.get(index);
+    }
+
+    /**
+     * @return The input as a number, or null if it is a command.
+     */
+    Integer getNumber(int index) {
+        try {
+            return Integer.valueOf(tokens.get(index));
+        } catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d inputs)", NAME, tokens.size());
+    }
+}
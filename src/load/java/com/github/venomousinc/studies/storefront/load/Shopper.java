@@ -0,0 +1,118 @@
+package com.github.venomousinc.studies.storefront.load;
+
+import com.github.venomousinc.studies.storefront.order.OrderRecord;
+import com.github.venomousinc.studies.storefront.order.ReceiptRenderer;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductPage;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+import com.github.venomousinc.studies.storefront.user.User;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+/**
+ * One simulated shopper, run on its own thread by a {@link LoadGenerator}.
+ * <p>
+ * Each step is one {@link LoadGenerator.Operation}, made the way {@link com.github.venomousinc.studies.storefront.Main}
+ * makes it and timed, followed by a think time drawn from an exponential distribution around the mean.
+ */
+
+public abstract class Shopper implements Runnable {
+
+    protected final LoadGenerator generator;
+    protected final User user;
+    protected final Random random;
+    private final long thinkMillis;
+
+    /**
+     * Receipts are rendered as at the till, then thrown away.
+     */
+    private final StringWriter receipt = new StringWriter();
+
+    /**
+     * @param generator
+     * @param id Seeds the Shopper's choices, so a run can be repeated.
+     * @param thinkMillis The mean pause between steps, 0 for none.
+     */
+    protected Shopper(LoadGenerator generator, int id, long thinkMillis) {
+        this.generator = generator;
+        this.user = new User("shopper" + id, "shopper" + id);
+        this.random = new Random(id);
+        this.thinkMillis = thinkMillis;
+    }
+
+    /**
+     * Makes one timed step.
+     */
+    protected abstract void step();
+
+    @Override
+    public void run() {
+        try {
+            // Staggers the start, so shoppers don't arrive at once.
+            think();
+            while(generator.isRunning()) {
+                step();
+                think();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            user.clearBasket();
+        }
+    }
+
+    private void think() throws InterruptedException {
+        if(thinkMillis > 0)
+            Thread.sleep((long) (-thinkMillis * Math.log(1 - random.nextDouble())));
+    }
+
+    /**
+     * @param productType The category, or null for every Product.
+     * @param offset
+     * @return The page, as Main lists it.
+     */
+    protected ProductPage browse(ProductType productType, int offset) {
+        long start = System.nanoTime();
+        ProductPage page = generator.getStorefront().getInventory().getPage(productType, offset, LoadGenerator.PAGE_SIZE);
+        generator.record(LoadGenerator.Operation.BROWSE, start, true);
+        return page;
+    }
+
+    /**
+     * @param item
+     * @return False if it is out of stock.
+     */
+    protected boolean add(ProductItem item) {
+        long start = System.nanoTime();
+        boolean added = user.addToBasket(generator.getStorefront().getInventory(), item, 1);
+        generator.record(LoadGenerator.Operation.ADD, start, added);
+        return added;
+    }
+
+    /**
+     * Renders the receipt, journals the order if the generator has an {@link com.github.venomousinc.studies.storefront.order.OrderJournal},
+     * then checks out, as Main does.
+     * @return False if the basket was empty or the order couldn't be journaled.
+     */
+    protected boolean checkout() {
+        if(user.getBasketItemCount() == 0)
+            return false;
+
+        long start = System.nanoTime();
+        boolean success = true;
+        try {
+            receipt.getBuffer().setLength(0);
+            ReceiptRenderer.forCurrentThread().write(generator.getStorefront().getName(), user, receipt);
+            if(generator.getJournal() != null)
+                generator.getJournal().append(OrderRecord.fromBasket(user, System.currentTimeMillis())).join();
+            user.checkout();
+        } catch(IOException | RuntimeException e) {
+            user.clearBasket();
+            success = false;
+        }
+        generator.record(LoadGenerator.Operation.CHECKOUT, start, success);
+        return success;
+    }
+}
@@ -1,17 +1,27 @@
 package com.github.venomousinc.studies.storefront;
 
+import com.github.venomousinc.studies.storefront.metrics.StorefrontMetrics;
+import com.github.venomousinc.studies.storefront.order.OrderJournal;
+import com.github.venomousinc.studies.storefront.order.OrderRecord;
+import com.github.venomousinc.studies.storefront.order.ReceiptRenderer;
+import com.github.venomousinc.studies.storefront.store.MappedCatalog;
 import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductPage;
 import com.github.venomousinc.studies.storefront.store.ProductType;
 import com.github.venomousinc.studies.storefront.user.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.math.BigDecimal;
-import java.text.NumberFormat;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.EnumSet;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 public class Main {
 
@@ -22,9 +32,20 @@ public class Main {
      */
     private static final boolean ADMIN_OVERRIDE = true;
 
+    /**
+     * Every checkout is recorded here, see {@link com.github.venomousinc.studies.storefront.order.JournalReplay}.
+     */
+    private static final Path JOURNAL_FILE = Paths.get("orders.journal");
+
+    /**
+     * Products listed at once, type '-2' for the next page.
+     */
+    private static final int PAGE_SIZE = 20;
+
     public static void main(String[] args) {
         LOGGER.info(">Storefront");
-        try(Scanner sc = new Scanner(System.in)) {
+        StorefrontMetrics.register();
+        try(Scanner sc = new Scanner(System.in); OrderJournal journal = new OrderJournal(JOURNAL_FILE)) {
             User user = null;
             if(ADMIN_OVERRIDE) {
                 user = new User("ADMIN", "admin");
@@ -47,17 +68,27 @@ public class Main {
                 }
             }
             /**
-             * TODO: Load storefronts
+             * Load the storefront from a catalog file if one was given, otherwise stock the demo storefront.
              */
-            Storefront storefront = new Storefront("Javamart 24/7");
-
-            /** Add stock to the storefront **/
-            storefront.addItem("JavaPrice Banana", "That's Java Price!", ProductType.FRUIT_AND_VEGETABLE, new BigDecimal(0.60), BigDecimal.valueOf(15));
-            storefront.addItem("Java Undressed", "You won't believe what this programmer did on page 21!",
-                    ProductType.MAGAZINES_AND_NEWSPAPERS, new BigDecimal(0.60), BigDecimal.valueOf(20));
-            storefront.addItem("Java Cigarettes (20)", null, ProductType.SMOKING_PRODUCT, new BigDecimal(7.55));
-            storefront.addItem("Java Cigarettes (50)", null, ProductType.SMOKING_PRODUCT, new BigDecimal(18.87), BigDecimal.valueOf(20));
-            storefront.addItem("Python Cigarettes (20)", null, ProductType.SMOKING_PRODUCT, new BigDecimal(8.15));
+            Storefront storefront;
+            if(args.length > 0) {
+                try {
+                    storefront = MappedCatalog.open(Paths.get(args[0])).toStorefront();
+                } catch(IOException e) {
+                    LOGGER.error( String.format("Catalog ERROR: %s", e.getMessage()));
+                    return;
+                }
+            } else {
+                storefront = new Storefront("Javamart 24/7");
+
+                /** Add stock to the storefront **/
+                storefront.addItem("JavaPrice Banana", "That's Java Price!", ProductType.FRUIT_AND_VEGETABLE, new BigDecimal("0.60"), BigDecimal.valueOf(15), 200);
+                storefront.addItem("Java Undressed", "You won't believe what this programmer did on page 21!",
+                        ProductType.MAGAZINES_AND_NEWSPAPERS, new BigDecimal("0.60"), BigDecimal.valueOf(20), 25);
+                storefront.addItem("Java Cigarettes (20)", null, ProductType.SMOKING_PRODUCT, new BigDecimal("7.55"), null, 50);
+                storefront.addItem("Java Cigarettes (50)", null, ProductType.SMOKING_PRODUCT, new BigDecimal("18.87"), BigDecimal.valueOf(20), 20);
+                storefront.addItem("Python Cigarettes (20)", null, ProductType.SMOKING_PRODUCT, new BigDecimal("8.15"), null, 50);
+            }
 
             /**
              * If the scanner is still alive, continue to ask for input.
@@ -72,6 +103,8 @@ public class Main {
             }
 
             int selector = -1;
+            int offset = 0;
+            PrintWriter console = new PrintWriter(System.out);
 
             while (sc != null) {
                 if(selector == -1) {
@@ -83,6 +116,7 @@ public class Main {
 
                     if(sc.hasNextInt()) {
                         selector = sc.nextInt();
+                        offset = 0;
                     }
                     System.out.println(selector);
 
@@ -95,23 +129,20 @@ public class Main {
                         continue;
                     }
 
-                    ArrayList<ProductItem> products = null;
-
                     /**
                      * If the user isn't using the Category override, tell them which category they're in.
                      */
-                    if(selector != 999) {
-                        ProductType productType = ProductType.values()[selector];
+                    ProductType productType = selector != 999 ? ProductType.values()[selector] : null;
+                    if(productType != null) {
                         System.out.format("Selected: [%d] %s%n", selector, productType.fixedName());
-                        products = storefront.getInventory().getProducts(productType);
-                    } else {
-                        products = storefront.getInventory().getProducts();
                     }
+                    ProductPage page = storefront.getInventory().getPage(productType, offset, PAGE_SIZE);
+                    List<ProductItem> products = page.getItems();
 
                     /**
                      * Throws the user back to the category selector.
                      */
-                    if(products == null || products.size() == 0) {
+                    if(page.getTotal() == 0) {
                         System.out.println("We're currently out of stock in this section!");
                         selector = -1;
                         continue;
@@ -119,20 +150,27 @@ public class Main {
 
                     System.out.println("Type '-1' to return to the categories, 'exit' to stop shopping, or 'checkout' to purchase the selected products.");
                     for(int i = 0; i < products.size(); i++) {
-                        System.out.format("%03d.  %-30s  %s%n", i, products.get(i).NAME, products.get(i).getFormattedPrice());
+                        System.out.format("%03d.  %-30s  %s%n", page.getOffset() + i, products.get(i).NAME, products.get(i).getFormattedPrice());
+                    }
+                    if(page.getTotal() > PAGE_SIZE) {
+                        System.out.format("Showing %d-%d of %d, type '-2' for the %s page.%n", page.getOffset(), page.getNextOffset() - 1,
+                                page.getTotal(), page.hasNext() ? "next" : "first");
                     }
 
                     if(sc.hasNextInt()) {
-                        int productID = sc.nextInt();
+                        int choice = sc.nextInt();
+                        int productID = choice - page.getOffset();
 
                         if(productID >= 0 && productID < products.size()) {
-                            if(user.addToBasket(products.get(productID))) {
+                            if(user.addToBasket(storefront.getInventory(), products.get(productID), 1)) {
                                 System.out.format("Adding Item: %s for $%s to Basket.%n", products.get(productID).NAME, products.get(productID).getFormattedPrice());
                             } else {
-                                System.out.println("Failed to add Item to Basket!");
+                                System.out.println("Failed to add Item to Basket, it is out of stock!");
                             }
-                            System.out.format(" * Basket Total: %s [%d]%n", user.getFormattedBasketTotal(true), user.getBasket().size());
-                        } else if(productID == -1) {
+                            System.out.format(" * Basket Total: %s [%d]%n", user.getFormattedBasketTotal(true), user.getBasketItemCount());
+                        } else if(choice == -2) {
+                            offset = page.hasNext() ? page.getNextOffset() : 0;
+                        } else if(choice == -1) {
                             selector = -1;
                         }
                     }
@@ -150,23 +188,20 @@ public class Main {
                             System.out.println();
                             System.out.println();
                             System.out.println();
-                            System.out.format("**RECEIPT** %15s - NO REFUNDS! **%n", storefront.getName());
-                            if(user != null && user.getBasket() != null && user.getBasket().size() > 0) {
-                                for(ProductItem item : user.getBasket()) {
-                                    System.out.format("** %-26s %-6s (%s)%n",
-                                            item.NAME,
-                                            item.getFormattedPrice(),
-                                            NumberFormat.getCurrencyInstance().format(item.TYPE.getTaxCost(item.getPrice(true, false))));
+                            if(user != null && user.getBasketItemCount() > 0) {
+                                ReceiptRenderer.forCurrentThread().write(storefront.getName(), user, console);
+                                try {
+                                    journal.append(OrderRecord.fromBasket(user, System.currentTimeMillis())).join();
+                                } catch(CompletionException e) {
+                                    LOGGER.error( String.format("Journal ERROR: %s", e.getCause().getMessage()));
                                 }
-
-                                System.out.format(" *** Total: %s%n", user.getFormattedBasketTotal(false));
-                                System.out.format(" *** VAT: %s%n", user.getFormattedBasketVATOnly());
-                                System.out.format(" *** Total with VAT: %s%n", user.getFormattedBasketTotal(true));
+                                user.checkout();
                                 return;
                             } else {
+                                System.out.format("**RECEIPT** %15s - NO REFUNDS! **%n", storefront.getName());
                                 System.out.println("You have nothing to checkout.");
                             }
-                            user.getBasket().clear();
+                            user.clearBasket();
                         break;
                     }
                 }
@@ -177,6 +212,8 @@ public class Main {
         } catch(InputMismatchException | NullPointerException e) {
             LOGGER.error( String.format("Scanner ERROR: %s", e.getMessage()));
             e.printStackTrace();
+        } catch(IOException e) {
+            LOGGER.error( String.format("IO ERROR: %s", e.getMessage()));
         }
     }
 
@@ -3,6 +3,8 @@ package com.github.venomousinc.studies.storefront;
 import com.github.venomousinc.studies.storefront.store.ProductInventory;
 import com.github.venomousinc.studies.storefront.store.ProductItem;
 import com.github.venomousinc.studies.storefront.store.ProductType;
+import com.github.venomousinc.studies.storefront.store.SharedCatalog;
+import com.github.venomousinc.studies.storefront.store.TaxRegion;
 
 import java.math.BigDecimal;
 
@@ -15,11 +17,28 @@ public class Storefront {
      */
     private final ProductInventory productInventory;
 
+    /**
+     * Where the Storefront charges VAT/tax, see {@link com.github.venomousinc.studies.storefront.store.TaxRates}.
+     */
+    private volatile TaxRegion taxRegion = TaxRegion.DEFAULT;
+
     public Storefront(String name) {
         this.name = name;
         this.productInventory = new ProductInventory(this);
     }
 
+    /**
+     * A Storefront selling every Product in a catalog shared with other Storefronts.
+     * Its own prices, stock and Products are kept apart from the catalog.
+     * @see ProductInventory#ProductInventory(Storefront, SharedCatalog)
+     * @param name
+     * @param catalog
+     */
+    public Storefront(String name, SharedCatalog catalog) {
+        this.name = name;
+        this.productInventory = new ProductInventory(this, catalog);
+    }
+
     /**
      * This is the inventory/stock of the Storefront.
      * @return {@link #productInventory} of this {@link Storefront}
@@ -32,6 +51,18 @@ public class Storefront {
         return name;
     }
 
+    public TaxRegion getTaxRegion() {
+        return taxRegion;
+    }
+
+    /**
+     * Prices new basket lines and listings with the region's rates from now on, baskets keep the tax they were given.
+     * @param taxRegion
+     */
+    public void setTaxRegion(TaxRegion taxRegion) {
+        this.taxRegion = taxRegion;
+    }
+
     /**
      * Attempts to add a new {@link ProductItem} to the {@link ProductInventory}, without a discount.
      *
@@ -65,4 +96,26 @@ public class Storefront {
         return getInventory().createProduct(item) ? item : null;
     }
 
+    /**
+     * Attempts to add a new {@link ProductItem} to the {@link ProductInventory}, with a set discount and quantity on hand.
+     *
+     * @see ProductInventory#createProduct(ProductItem, int)
+     * @param name
+     * @param description
+     * @param type
+     * @param recommendedRetailPrice
+     * @param discount
+     * @param stock
+     * @return
+     */
+    public ProductItem addItem(String name, String description, ProductType type, BigDecimal recommendedRetailPrice, BigDecimal discount, int stock) {
+        ProductItem item = new ProductItem(name, description, type, recommendedRetailPrice);
+
+        if(discount != null) {
+            item.setDiscount(discount);
+        }
+
+        return getInventory().createProduct(item, stock) ? item : null;
+    }
+
 }
@@ -0,0 +1,272 @@
+package com.github.venomousinc.studies.storefront;
+
+import com.github.venomousinc.studies.storefront.store.ProductInventory;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.SharedCatalog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Every {@link Storefront} being served, by name.
+ * <p>
+ * A Storefront is loaded the first time it is asked for, and evicted once it has not been asked for within the
+ * idle timeout, or when more than the maximum are loaded. A Storefront evicted while still in use keeps working
+ * for whoever holds it, but the next {@link #get(String)} loads a fresh one, so callers should look it up each time.
+ * <p>
+ * Storefronts built on a {@link SharedCatalog} by the {@link Loader} share its Products, so each one only costs
+ * as much as its own overrides.
+ *
+ * @see #overlayLoader(SharedCatalog, Path)
+ */
+
+public class StorefrontRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( StorefrontRegistry.class );
+
+    /**
+     * Creates a Storefront by name.
+     */
+    public interface Loader {
+        /**
+         * @param name
+         * @return The Storefront, never null.
+         * @throws IOException If it does not exist or could not be read.
+         */
+        Storefront load(String name) throws IOException;
+    }
+
+    private final ConcurrentHashMap<String, Entry> storefronts = new ConcurrentHashMap<>();
+    private final Loader loader;
+    private final long idleTimeoutNanos;
+    private final int maximumLoaded;
+    private final Consumer<Storefront> evictionListener;
+
+    /**
+     * @param loader
+     * @param idleTimeout How long a Storefront stays loaded without being asked for.
+     * @param unit
+     * @param maximumLoaded The most Storefronts loaded at once, the least recently used are evicted beyond that.
+     * @param evictionListener Called with each evicted Storefront, e.g. to save its stock levels, or null.
+     */
+    public StorefrontRegistry(Loader loader, long idleTimeout, TimeUnit unit, int maximumLoaded, Consumer<Storefront> evictionListener) {
+        if(maximumLoaded <= 0)
+            throw new IllegalArgumentException("Maximum loaded must be positive: " + maximumLoaded);
+
+        this.loader = loader;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.maximumLoaded = maximumLoaded;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Returns the Storefront, loading it first if needed. Concurrent callers asking for the same
+     * Storefront wait for a single load.
+     * @param name
+     * @return
+     * @throws IOException If the {@link Loader} failed, the next call tries again.
+     */
+    public Storefront get(String name) throws IOException {
+        Entry entry = storefronts.get(name);
+        if(entry == null) {
+            Entry created = new Entry();
+            entry = storefronts.putIfAbsent(name, created);
+            if(entry == null) {
+                entry = created;
+                load(name, created);
+            }
+        }
+        entry.lastAccess = System.nanoTime();
+
+        try {
+            return entry.storefront.join();
+        } catch(CompletionException e) {
+            storefronts.remove(name, entry);
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw e;
+        }
+    }
+
+    private void load(String name, Entry entry) {
+        try {
+            Storefront storefront = loader.load(name);
+            if(storefront == null)
+                throw new IOException("No storefront named " + name);
+            entry.storefront.complete(storefront);
+            LOGGER.info(String.format("Loaded storefront %s, %d loaded", name, storefronts.size()));
+        } catch(IOException | RuntimeException e) {
+            entry.storefront.completeExceptionally(e);
+            return;
+        }
+
+        evictIdle();
+        while(storefronts.size() > maximumLoaded && evictLeastRecentlyUsed(name)) {
+            // Keep evicting until back under the maximum, or only Storefronts still loading remain
+        }
+    }
+
+    /**
+     * @param name
+     * @return If the Storefront is loaded, without loading it or counting as a use.
+     */
+    public boolean isLoaded(String name) {
+        Entry entry = storefronts.get(name);
+        return entry != null && entry.storefront.isDone() && !entry.storefront.isCompletedExceptionally();
+    }
+
+    /**
+     * @return The number of Storefronts loaded or loading.
+     */
+    public int size() {
+        return storefronts.size();
+    }
+
+    /**
+     * Evicts every Storefront which has not been asked for within the idle timeout.
+     * Also done after every load, call it periodically to release memory when nothing is being loaded.
+     * @return The number evicted.
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for(Map.Entry<String, Entry> entry : storefronts.entrySet()) {
+            if(entry.getValue().storefront.isDone() && now - entry.getValue().lastAccess > idleTimeoutNanos
+                    && evict(entry.getKey(), entry.getValue()))
+                evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * @param name
+     * @return If the Storefront was loaded.
+     */
+    public boolean evict(String name) {
+        Entry entry = storefronts.get(name);
+        return entry != null && evict(name, entry);
+    }
+
+    /**
+     * Evicts the loaded Storefront used longest ago, other than the one just loaded.
+     * @return False if there was nothing to evict.
+     */
+    private boolean evictLeastRecentlyUsed(String keep) {
+        String oldestName = null;
+        Entry oldest = null;
+        for(Map.Entry<String, Entry> entry : storefronts.entrySet()) {
+            Entry candidate = entry.getValue();
+            if(entry.getKey().equals(keep) || !candidate.storefront.isDone())
+                continue;
+            if(oldest == null || candidate.lastAccess - oldest.lastAccess < 0) {
+                oldestName = entry.getKey();
+                oldest = candidate;
+            }
+        }
+
+        if(oldest == null)
+            return false;
+
+        evict(oldestName, oldest);
+        return true;
+    }
+
+    private boolean evict(String name, Entry entry) {
+        if(!storefronts.remove(name, entry))
+            return false;
+
+        Storefront storefront = entry.storefront.isCompletedExceptionally() ? null : entry.storefront.getNow(null);
+        if(storefront != null && evictionListener != null)
+            evictionListener.accept(storefront);
+        LOGGER.info(String.format("Evicted storefront %s", name));
+        return true;
+    }
+
+    /**
+     * A {@link Loader} of Storefronts on a {@link SharedCatalog}, each with its own overrides read from
+     * {@code <name>.overlay} in the directory.
+     * <p>
+     * Each line of an overlay is {@code serial,rrp,discount,stock}. Any of the last three may be left empty
+     * to keep the catalog's price and discount, or to leave the Product untracked.
+     * Blank lines and lines starting with {@code #} are skipped.
+     * @param catalog
+     * @param directory
+     * @return
+     */
+    public static Loader overlayLoader(SharedCatalog catalog, Path directory) {
+        return name -> {
+            if(!validName(name))
+                throw new IOException("Not a storefront name: " + name);
+
+            Storefront storefront = new Storefront(name, catalog);
+            ProductInventory inventory = storefront.getInventory();
+            Path overlay = directory.resolve(name + ".overlay");
+
+            try(BufferedReader reader = Files.newBufferedReader(overlay, StandardCharsets.UTF_8)) {
+                int lineNumber = 0;
+                for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lineNumber++;
+                    line = line.trim();
+                    if(line.isEmpty() || line.charAt(0) == '#')
+                        continue;
+
+                    try {
+                        applyOverlay(inventory, line.split(",", -1));
+                    } catch(IllegalArgumentException e) {
+                        throw new IOException(String.format("%s line %d: %s", overlay, lineNumber, e.getMessage()), e);
+                    }
+                }
+            }
+            return storefront;
+        };
+    }
+
+    private static void applyOverlay(ProductInventory inventory, String[] fields) {
+        if(fields.length != 4)
+            throw new IllegalArgumentException("Expected serial,rrp,discount,stock");
+
+        ProductItem item = inventory.getProduct(Long.parseLong(fields[0].trim()));
+        if(item == null)
+            throw new IllegalArgumentException("No product with serial " + fields[0].trim());
+
+        String rrp = fields[1].trim(), discount = fields[2].trim(), stock = fields[3].trim();
+        if(!rrp.isEmpty()) {
+            inventory.setPrice(item, new BigDecimal(rrp), discount.isEmpty() ? item.getPromotionalDiscount() : new BigDecimal(discount));
+        } else if(!discount.isEmpty()) {
+            inventory.setDiscount(item, new BigDecimal(discount));
+        }
+        if(!stock.isEmpty())
+            inventory.setStock(item, Integer.parseInt(stock));
+    }
+
+    /**
+     * Storefront names become file names, so only letters, digits, {@code -} and {@code _} are allowed.
+     */
+    private static boolean validName(String name) {
+        if(name == null || name.isEmpty())
+            return false;
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if(!Character.isLetterOrDigit(c) && c != '-' && c != '_')
+                return false;
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Storefront> storefront = new CompletableFuture<>();
+        private volatile long lastAccess = System.nanoTime();
+    }
+}
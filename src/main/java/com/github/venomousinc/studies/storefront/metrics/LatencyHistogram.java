@@ -0,0 +1,162 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts recorded durations into log-linear buckets, so percentiles can be read without keeping every sample.
+ * <p>
+ * Each power of two is split into {@link #SUB_BUCKETS} equal buckets, so a percentile is within 1/16th of the true
+ * value, from one unit of the histogram's resolution upwards. Recording is lock-free and allocation-free,
+ * and safe from any number of threads.
+ */
+
+public class LatencyHistogram {
+
+    /** Buckets per power of two, values below this are counted exactly. */
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final TimeUnit resolution;
+
+    /**
+     * A histogram of microseconds.
+     */
+    public LatencyHistogram() {
+        this(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param resolution The unit durations are counted in, e.g. {@link TimeUnit#NANOSECONDS} for very short calls.
+     */
+    public LatencyHistogram(TimeUnit resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * @param duration
+     * @param unit
+     */
+    public void record(long duration, TimeUnit unit) {
+        long value = Math.max(0, resolution.convert(duration, unit));
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        total.add(value);
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return The mean duration in microseconds, or 0 if nothing was recorded.
+     */
+    public long getMeanMicros() {
+        return getMean(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param unit
+     * @return The mean duration, or 0 if nothing was recorded.
+     */
+    public long getMean(TimeUnit unit) {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : unit.convert(total.sum() / recorded, resolution);
+    }
+
+    /**
+     * @see #getPercentile(double, TimeUnit)
+     */
+    public long getPercentileMicros(double percentile) {
+        return getPercentile(percentile, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param percentile e.g. {@code 99.0}
+     * @param unit
+     * @return The duration which that percentage of recordings were no longer than, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        return unit.convert(percentileValue(percentile), resolution);
+    }
+
+    private long percentileValue(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= rank)
+                return highestValue(i);
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+    /**
+     * @return The longest duration recorded in microseconds, to within a bucket.
+     */
+    public long getMaxMicros() {
+        return getMax(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param unit
+     * @return The longest duration recorded, to within a bucket.
+     */
+    public long getMax(TimeUnit unit) {
+        for(int i = BUCKETS - 1; i >= 0; i--) {
+            if(counts.get(i) > 0)
+                return unit.convert(highestValue(i), resolution);
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets every recording, e.g. at the start of each reporting interval.
+     * Recordings made while it runs may be kept or lost.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+    }
+
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest value counted in the bucket.
+     */
+    private static long highestValue(int bucket) {
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
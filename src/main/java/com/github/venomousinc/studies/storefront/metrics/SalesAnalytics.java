@@ -0,0 +1,244 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Units, revenue and VAT/tax checked out, per {@link ProductType} and per Product, all-time and over rolling {@link Window}s.
+ * <p>
+ * Every sale is added to striped {@link LongAdder}s, so checkouts on many threads never contend or lock.
+ * Each window is a ring of time slots, and a slot is replaced by a fresh one the first time it is written to in a
+ * new period, so old sales fall out of the window without any sweeping. Reading a window sums its slots,
+ * a fixed amount of work however many orders there were.
+ * <p>
+ * A sale recorded while its slot is being replaced may be missed by the window, never by the all-time totals.
+ *
+ * @see StorefrontMetrics#sold(ProductItem, int, long, long)
+ */
+
+public final class SalesAnalytics {
+
+    /**
+     * The rolling windows kept, each covering its length to within one slot.
+     */
+    public enum Window {
+        /** 60 slots of a second. */
+        MINUTE(1000, 60),
+        /** 60 slots of a minute. */
+        HOUR(60 * 1000, 60),
+        /** 96 slots of a quarter of an hour. */
+        DAY(15 * 60 * 1000, 96);
+
+        final long slotMillis;
+        final int slots;
+
+        Window(long slotMillis, int slots) {
+            this.slotMillis = slotMillis;
+            this.slots = slots;
+        }
+    }
+
+    private static final int TYPES = ProductType.values().length;
+
+    private static final SalesAnalytics INSTANCE = new SalesAnalytics(System::currentTimeMillis);
+
+    private final LongSupplier clock;
+
+    /** All-time, by {@link ProductType#ordinal()}. */
+    private final Counters[] byType = Counters.array(TYPES);
+
+    /** All-time, by {@link ProductItem#SERIAL_NUMBER}. */
+    private final ConcurrentHashMap<Long, Counters> byProduct = new ConcurrentHashMap<>();
+
+    /** A ring of slots per {@link Window}, by ordinal. */
+    private final List<AtomicReferenceArray<Slot>> rings;
+
+    /**
+     * @param clock Milliseconds since the epoch.
+     */
+    public SalesAnalytics(LongSupplier clock) {
+        this.clock = clock;
+        this.rings = new ArrayList<>(Window.values().length);
+        for(Window window : Window.values()) {
+            rings.add(new AtomicReferenceArray<>(window.slots));
+        }
+    }
+
+    /**
+     * @return The analytics fed by every checkout in this process.
+     */
+    public static SalesAnalytics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param item
+     * @param units
+     * @param netMinorUnits The price of those units without VAT/tax.
+     * @param vatMinorUnits The VAT/tax on those units.
+     */
+    public void record(ProductItem item, int units, long netMinorUnits, long vatMinorUnits) {
+        int ordinal = item.TYPE.ordinal();
+        byType[ordinal].add(units, netMinorUnits, vatMinorUnits);
+
+        Counters product = byProduct.get(item.SERIAL_NUMBER);
+        if(product == null) {
+            Counters created = new Counters();
+            product = byProduct.putIfAbsent(item.SERIAL_NUMBER, created);
+            if(product == null)
+                product = created;
+        }
+        product.add(units, netMinorUnits, vatMinorUnits);
+
+        long now = clock.getAsLong();
+        for(Window window : Window.values()) {
+            slot(window, now / window.slotMillis).byType[ordinal].add(units, netMinorUnits, vatMinorUnits);
+        }
+    }
+
+    /**
+     * @return The slot for the period, replacing the one left from an earlier lap of the ring.
+     */
+    private Slot slot(Window window, long period) {
+        AtomicReferenceArray<Slot> ring = rings.get(window.ordinal());
+        int index = (int) (period % window.slots);
+        Slot slot = ring.get(index);
+        while(slot == null || slot.period < period) {
+            Slot fresh = new Slot(period);
+            if(ring.compareAndSet(index, slot, fresh))
+                return fresh;
+            slot = ring.get(index);
+        }
+        return slot;
+    }
+
+    /**
+     * @return Everything sold since the process started or {@link #reset()}.
+     */
+    public SalesTotals getTotals() {
+        return sum(byType, null);
+    }
+
+    public SalesTotals getTotals(ProductType type) {
+        return byType[type.ordinal()].totals();
+    }
+
+    /**
+     * @param window
+     * @return Everything sold within the window.
+     */
+    public SalesTotals getTotals(Window window) {
+        return getTotals(null, window);
+    }
+
+    /**
+     * @param type The type, or null for every type.
+     * @param window
+     * @return What was sold of the type within the window.
+     */
+    public SalesTotals getTotals(ProductType type, Window window) {
+        AtomicReferenceArray<Slot> ring = rings.get(window.ordinal());
+        long oldest = clock.getAsLong() / window.slotMillis - window.slots;
+        long units = 0, net = 0, vat = 0;
+        for(int i = 0; i < window.slots; i++) {
+            Slot slot = ring.get(i);
+            if(slot == null || slot.period <= oldest)
+                continue;
+
+            SalesTotals totals = sum(slot.byType, type);
+            units += totals.getUnits();
+            net += totals.getNetMinorUnits();
+            vat += totals.getVatMinorUnits();
+        }
+        return new SalesTotals(units, net, vat);
+    }
+
+    /**
+     * @param serialNumber
+     * @return Everything sold of the Product, {@link SalesTotals#NONE} if it never sold.
+     */
+    public SalesTotals getProductTotals(long serialNumber) {
+        Counters product = byProduct.get(serialNumber);
+        return product != null ? product.totals() : SalesTotals.NONE;
+    }
+
+    /**
+     * Forgets every sale.
+     */
+    public void reset() {
+        for(Counters counters : byType) {
+            counters.reset();
+        }
+        byProduct.clear();
+        for(AtomicReferenceArray<Slot> ring : rings) {
+            for(int i = 0; i < ring.length(); i++) {
+                ring.set(i, null);
+            }
+        }
+    }
+
+    /**
+     * @param type The type to read, or null to add up every type.
+     */
+    private static SalesTotals sum(Counters[] byType, ProductType type) {
+        if(type != null)
+            return byType[type.ordinal()].totals();
+
+        long units = 0, net = 0, vat = 0;
+        for(Counters counters : byType) {
+            units += counters.units.sum();
+            net += counters.net.sum();
+            vat += counters.vat.sum();
+        }
+        return new SalesTotals(units, net, vat);
+    }
+
+    private static final class Counters {
+        private final LongAdder units = new LongAdder();
+        private final LongAdder net = new LongAdder();
+        private final LongAdder vat = new LongAdder();
+
+        private void add(int units, long net, long vat) {
+            this.units.add(units);
+            this.net.add(net);
+            this.vat.add(vat);
+        }
+
+        private SalesTotals totals() {
+            return new SalesTotals(units.sum(), net.sum(), vat.sum());
+        }
+
+        private void reset() {
+            units.reset();
+            net.reset();
+            vat.reset();
+        }
+
+        private static Counters[] array(int length) {
+            Counters[] counters = new Counters[length];
+            for(int i = 0; i < length; i++) {
+                counters[i] = new Counters();
+            }
+            return counters;
+        }
+    }
+
+    /**
+     * One period of a {@link Window}, by type.
+     */
+    private static final class Slot {
+        private final long period;
+        private final Counters[] byType = Counters.array(TYPES);
+
+        private Slot(long period) {
+            this.period = period;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+/**
+ * Units, net revenue and VAT/tax sold, in minor units, as read from {@link SalesAnalytics}.
+ */
+
+public final class SalesTotals {
+
+    public static final SalesTotals NONE = new SalesTotals(0, 0, 0);
+
+    private final long units;
+    private final long netMinorUnits;
+    private final long vatMinorUnits;
+
+    public SalesTotals(long units, long netMinorUnits, long vatMinorUnits) {
+        this.units = units;
+        this.netMinorUnits = netMinorUnits;
+        this.vatMinorUnits = vatMinorUnits;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public long getNetMinorUnits() {
+        return netMinorUnits;
+    }
+
+    public long getVatMinorUnits() {
+        return vatMinorUnits;
+    }
+
+    /**
+     * @return Revenue with VAT/tax, in minor units.
+     */
+    public long getGrossMinorUnits() {
+        return netMinorUnits + vatMinorUnits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d units, net %d, VAT %d", units, netMinorUnits, vatMinorUnits);
+    }
+}
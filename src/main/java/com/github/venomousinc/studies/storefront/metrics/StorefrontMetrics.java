@@ -0,0 +1,279 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Process-wide counters, latencies and gauges for the store's hot paths, published over JMX by {@link #register()}.
+ * <p>
+ * Everything recorded on a hot path is a striped {@link LongAdder} or a sampled {@link Timer}, so recording costs
+ * a few nanoseconds and threads never contend on a shared counter. Gauges are only computed when read.
+ * <p>
+ * Set the {@value #DUMP_PROPERTY} system property to a path to have every metric written there on exit.
+ */
+
+public final class StorefrontMetrics implements StorefrontMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( StorefrontMetrics.class );
+
+    public static final String OBJECT_NAME = "com.github.venomousinc.studies.storefront:type=StorefrontMetrics";
+    public static final String DUMP_PROPERTY = "storefront.metrics.dump";
+
+    /** Listing and looking up Products, far too quick to time every call. */
+    public static final Timer INVENTORY_QUERIES = new Timer("inventory.queries", 64);
+    public static final Timer INVENTORY_SEARCHES = new Timer("inventory.searches", 8);
+    public static final Timer BASKET_ADDS = new Timer("basket.adds", 8);
+    public static final Timer CHECKOUTS = new Timer("checkouts", 1);
+
+    private static final Timer[] TIMERS = { INVENTORY_QUERIES, INVENTORY_SEARCHES, BASKET_ADDS, CHECKOUTS };
+
+    private static final LongAdder BASKET_TOTALS = new LongAdder();
+    private static final LongAdder ACTIVE_BASKETS = new LongAdder();
+
+    /**
+     * Size functions by the catalog they measure, weakly, so an evicted Storefront drops out of the gauge.
+     */
+    private static final Map<Object, ToLongFunction<Object>> CATALOGS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final StorefrontMetrics INSTANCE = new StorefrontMetrics();
+    private static boolean registered;
+
+    private StorefrontMetrics() {
+    }
+
+    public static StorefrontMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Counts a read of a basket's running totals.
+     */
+    public static void basketTotalled() {
+        BASKET_TOTALS.increment();
+    }
+
+    /**
+     * A basket went from empty to holding items.
+     */
+    public static void basketOpened() {
+        ACTIVE_BASKETS.increment();
+    }
+
+    /**
+     * A basket holding items was emptied, by removal, clearing or checkout.
+     */
+    public static void basketEmptied() {
+        ACTIVE_BASKETS.decrement();
+    }
+
+    /**
+     * Counts units checked out into the {@link SalesAnalytics}.
+     * @param item
+     * @param units
+     * @param netMinorUnits The net price of those units.
+     * @param vatMinorUnits The VAT/tax on those units.
+     */
+    public static void sold(ProductItem item, int units, long netMinorUnits, long vatMinorUnits) {
+        SalesAnalytics.getInstance().record(item, units, netMinorUnits, vatMinorUnits);
+    }
+
+    /**
+     * Adds a catalog to the {@link #getCatalogSize()} gauge for as long as it is reachable.
+     * @param catalog
+     * @param size Must not capture the catalog, or it will never be dropped.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void trackCatalog(T catalog, ToLongFunction<? super T> size) {
+        CATALOGS.put(catalog, (ToLongFunction<Object>) size);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, once. Safe to call from every entry point.
+     */
+    public static synchronized void register() {
+        if(registered)
+            return;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch(JMException e) {
+            LOGGER.error( String.format("Metrics JMX ERROR: %s", e.getMessage()));
+        }
+
+        String dump = System.getProperty(DUMP_PROPERTY);
+        if(dump != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    dump(Paths.get(dump));
+                } catch(IOException e) {
+                    LOGGER.error( String.format("Metrics dump ERROR: %s", e.getMessage()));
+                }
+            }, "metrics-dump"));
+        }
+        registered = true;
+    }
+
+    /**
+     * Writes every metric, one {@code name value} per line, replacing the file.
+     * @param path
+     * @throws IOException
+     */
+    public static void dump(Path path) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(path)) {
+            for(Timer timer : TIMERS) {
+                TimerStats stats = new TimerStats(timer);
+                write(writer, timer.NAME + ".count", stats.getCount());
+                write(writer, timer.NAME + ".sampled", stats.getSampled());
+                write(writer, timer.NAME + ".meanNanos", stats.getMeanNanos());
+                write(writer, timer.NAME + ".p50Nanos", stats.getP50Nanos());
+                write(writer, timer.NAME + ".p99Nanos", stats.getP99Nanos());
+                write(writer, timer.NAME + ".p999Nanos", stats.getP999Nanos());
+                write(writer, timer.NAME + ".maxNanos", stats.getMaxNanos());
+            }
+            write(writer, "basket.totals", INSTANCE.getBasketTotals());
+            write(writer, "basket.active", INSTANCE.getActiveBaskets());
+            write(writer, "catalog.size", INSTANCE.getCatalogSize());
+            SalesAnalytics sales = SalesAnalytics.getInstance();
+            for(ProductType type : ProductType.values()) {
+                SalesTotals totals = sales.getTotals(type);
+                write(writer, "sales." + type.name() + ".units", totals.getUnits());
+                write(writer, "sales." + type.name() + ".revenueMinorUnits", totals.getNetMinorUnits());
+                write(writer, "sales." + type.name() + ".vatMinorUnits", totals.getVatMinorUnits());
+            }
+            for(SalesAnalytics.Window window : SalesAnalytics.Window.values()) {
+                SalesTotals totals = sales.getTotals(window);
+                String name = "sales.last" + window.name().charAt(0) + window.name().substring(1).toLowerCase();
+                write(writer, name + ".units", totals.getUnits());
+                write(writer, name + ".revenueMinorUnits", totals.getNetMinorUnits());
+                write(writer, name + ".vatMinorUnits", totals.getVatMinorUnits());
+            }
+        }
+    }
+
+    private static void write(BufferedWriter writer, String name, long value) throws IOException {
+        writer.write(name);
+        writer.write(' ');
+        writer.write(Long.toString(value));
+        writer.newLine();
+    }
+
+    @Override
+    public TimerStats getInventoryQueries() {
+        return new TimerStats(INVENTORY_QUERIES);
+    }
+
+    @Override
+    public TimerStats getInventorySearches() {
+        return new TimerStats(INVENTORY_SEARCHES);
+    }
+
+    @Override
+    public TimerStats getBasketAdds() {
+        return new TimerStats(BASKET_ADDS);
+    }
+
+    @Override
+    public TimerStats getCheckouts() {
+        return new TimerStats(CHECKOUTS);
+    }
+
+    @Override
+    public long getBasketTotals() {
+        return BASKET_TOTALS.sum();
+    }
+
+    @Override
+    public long getCatalogSize() {
+        List<Map.Entry<Object, ToLongFunction<Object>>> catalogs;
+        synchronized (CATALOGS) {
+            catalogs = new ArrayList<>(CATALOGS.entrySet());
+        }
+        long size = 0;
+        for(Map.Entry<Object, ToLongFunction<Object>> catalog : catalogs) {
+            if(catalog.getKey() != null)
+                size += catalog.getValue().applyAsLong(catalog.getKey());
+        }
+        return size;
+    }
+
+    @Override
+    public long getActiveBaskets() {
+        return ACTIVE_BASKETS.sum();
+    }
+
+    @Override
+    public Map<String, Long> getUnitsSold() {
+        return byType(SalesTotals::getUnits);
+    }
+
+    @Override
+    public Map<String, Long> getRevenueMinorUnits() {
+        return byType(SalesTotals::getNetMinorUnits);
+    }
+
+    @Override
+    public Map<String, Long> getVatMinorUnits() {
+        return byType(SalesTotals::getVatMinorUnits);
+    }
+
+    @Override
+    public SalesTotals getSalesLastMinute() {
+        return SalesAnalytics.getInstance().getTotals(SalesAnalytics.Window.MINUTE);
+    }
+
+    @Override
+    public SalesTotals getSalesLastHour() {
+        return SalesAnalytics.getInstance().getTotals(SalesAnalytics.Window.HOUR);
+    }
+
+    @Override
+    public SalesTotals getSalesLastDay() {
+        return SalesAnalytics.getInstance().getTotals(SalesAnalytics.Window.DAY);
+    }
+
+    @Override
+    public void dumpToFile(String path) throws IOException {
+        dump(Paths.get(path));
+    }
+
+    /**
+     * Leaves {@link #getActiveBaskets()} alone, as baskets open now will still be emptied later.
+     */
+    @Override
+    public void reset() {
+        for(Timer timer : TIMERS) {
+            timer.reset();
+        }
+        BASKET_TOTALS.reset();
+        SalesAnalytics.getInstance().reset();
+    }
+
+    private static Map<String, Long> byType(ToLongFunction<SalesTotals> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for(ProductType type : ProductType.values()) {
+            values.put(type.name(), value.applyAsLong(SalesAnalytics.getInstance().getTotals(type)));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The JMX view of {@link StorefrontMetrics}, registered as {@value StorefrontMetrics#OBJECT_NAME}.
+ */
+
+public interface StorefrontMetricsMXBean {
+
+    TimerStats getInventoryQueries();
+
+    TimerStats getInventorySearches();
+
+    TimerStats getBasketAdds();
+
+    TimerStats getCheckouts();
+
+    long getBasketTotals();
+
+    /**
+     * @return The number of Products across every live Inventory.
+     */
+    long getCatalogSize();
+
+    /**
+     * @return The number of baskets holding at least one item.
+     */
+    long getActiveBaskets();
+
+    /**
+     * @return Units checked out by ProductType name.
+     */
+    Map<String, Long> getUnitsSold();
+
+    /**
+     * @return Net revenue checked out in minor units by ProductType name.
+     */
+    Map<String, Long> getRevenueMinorUnits();
+
+    /**
+     * @return VAT/tax checked out in minor units by ProductType name.
+     */
+    Map<String, Long> getVatMinorUnits();
+
+    SalesTotals getSalesLastMinute();
+
+    SalesTotals getSalesLastHour();
+
+    SalesTotals getSalesLastDay();
+
+    /**
+     * Writes every metric to a file, one {@code name value} per line.
+     * @param path
+     * @throws IOException
+     */
+    void dumpToFile(String path) throws IOException;
+
+    /**
+     * Zeroes every counter and histogram, gauges are unaffected.
+     */
+    void reset();
+}
@@ -0,0 +1,85 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts every call to a hot-path operation, and times a sample of them into a {@link LatencyHistogram} of nanoseconds.
+ * <p>
+ * Counting is one uncontended {@link LongAdder} increment. Reading the clock twice costs more than some of the calls
+ * being measured, so only one call in {@link #getSampleEvery()} is timed, chosen at random per thread:
+ * <pre>
+ *     long start = TIMER.start();
+ *     ...
+ *     TIMER.stop(start);
+ * </pre>
+ */
+
+public final class Timer {
+
+    /**
+     * Returned by {@link #start()} for calls which aren't timed.
+     */
+    public static final long UNSAMPLED = Long.MIN_VALUE;
+
+    public final String NAME;
+
+    private final LongAdder count = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram(TimeUnit.NANOSECONDS);
+    private final int sampleMask;
+
+    /**
+     * @param name
+     * @param sampleEvery Time one call in this many, a power of two, 1 to time every call.
+     */
+    public Timer(String name, int sampleEvery) {
+        if(sampleEvery <= 0 || Integer.bitCount(sampleEvery) != 1)
+            throw new IllegalArgumentException("Sample rate must be a power of two: " + sampleEvery);
+
+        this.NAME = name;
+        this.sampleMask = sampleEvery - 1;
+    }
+
+    /**
+     * Counts the call.
+     * @return The time to pass to {@link #stop(long)}, or {@link #UNSAMPLED}.
+     */
+    public long start() {
+        count.increment();
+        if(sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0)
+            return UNSAMPLED;
+        return System.nanoTime();
+    }
+
+    /**
+     * @param start From {@link #start()}.
+     */
+    public void stop(long start) {
+        if(start != UNSAMPLED)
+            histogram.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Every call counted, timed or not.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    public int getSampleEvery() {
+        return sampleMask + 1;
+    }
+
+    /**
+     * @return The sampled durations.
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public void reset() {
+        count.reset();
+        histogram.reset();
+    }
+}
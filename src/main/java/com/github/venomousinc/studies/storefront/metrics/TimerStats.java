@@ -0,0 +1,63 @@
+package com.github.venomousinc.studies.storefront.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point-in-time reading of a {@link Timer}, published over JMX as composite data.
+ */
+
+public final class TimerStats {
+
+    private final long count;
+    private final long sampled;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    TimerStats(Timer timer) {
+        LatencyHistogram histogram = timer.getHistogram();
+        this.count = timer.getCount();
+        this.sampled = histogram.getCount();
+        this.meanNanos = histogram.getMean(TimeUnit.NANOSECONDS);
+        this.p50Nanos = histogram.getPercentile(50, TimeUnit.NANOSECONDS);
+        this.p99Nanos = histogram.getPercentile(99, TimeUnit.NANOSECONDS);
+        this.p999Nanos = histogram.getPercentile(99.9, TimeUnit.NANOSECONDS);
+        this.maxNanos = histogram.getMax(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return Every call counted.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The calls which were timed.
+     */
+    public long getSampled() {
+        return sampled;
+    }
+
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
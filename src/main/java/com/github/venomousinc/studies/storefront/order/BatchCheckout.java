@@ -0,0 +1,267 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import com.github.venomousinc.studies.storefront.store.ProductInventory;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.user.BasketLine;
+import com.github.venomousinc.studies.storefront.user.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks out many {@link User}s' baskets at once, e.g. queued web orders or end-of-day settlement.
+ * <p>
+ * Baskets are priced, taxed, recorded and rendered as receipts in parallel on a {@link ForkJoinPool}, in chunks of
+ * {@link #CHUNK} baskets, each with its thread's {@link ReceiptRenderer}. Units sold are tallied per Product as the
+ * chunks are joined, so stock is committed once per Product for the whole batch rather than once per basket line.
+ * Orders are then journaled together, sharing the {@link OrderJournal}'s group commits, and receipts written in the
+ * order the Users were given.
+ * <p>
+ * No User may be used elsewhere while its batch runs.
+ */
+
+public class BatchCheckout {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( BatchCheckout.class );
+
+    /**
+     * Baskets per task, enough to outweigh the cost of forking one.
+     */
+    static final int CHUNK = 32;
+
+    private final ForkJoinPool pool;
+    private final OrderJournal journal;
+
+    /**
+     * A batch checkout on the common pool.
+     * @param journal Orders are recorded here, or null to skip recording them.
+     */
+    public BatchCheckout(OrderJournal journal) {
+        this(ForkJoinPool.commonPool(), journal);
+    }
+
+    /**
+     * @param pool Sized to the cores checkouts may use.
+     * @param journal Orders are recorded here, or null to skip recording them.
+     */
+    public BatchCheckout(ForkJoinPool pool, OrderJournal journal) {
+        this.pool = pool;
+        this.journal = journal;
+    }
+
+    /**
+     * Checks out every User with something in their basket. A basket whose order can't be journaled is left as it is,
+     * with its stock still reserved, so it can be checked out again.
+     * @param storeName Printed on the receipts.
+     * @param users
+     * @param receipts Every receipt, in the order of {@code users}. Not flushed.
+     * @return The batch's totals.
+     * @throws IOException If the receipts can't be written, once the batch has been checked out.
+     */
+    public BatchSummary checkout(String storeName, List<User> users, Writer receipts) throws IOException {
+        long start = System.nanoTime();
+        Batch batch = new Batch(storeName, users, System.currentTimeMillis());
+        Tally tally = pool.invoke(new Settle(batch, 0, users.size()));
+
+        int failed = journal != null ? journal(batch, tally) : 0;
+
+        for(Map.Entry<ProductInventory, Map<ProductItem, int[]>> inventory : tally.sold.entrySet()) {
+            for(Map.Entry<ProductItem, int[]> product : inventory.getValue().entrySet()) {
+                inventory.getKey().commit(product.getKey(), product.getValue()[0]);
+            }
+        }
+        for(int i = 0; i < users.size(); i++) {
+            if(batch.orders[i] != null)
+                users.get(i).checkout(false);
+        }
+
+        BatchSummary summary = new BatchSummary(tally.orders - failed, tally.empty, failed, tally.units,
+                tally.net, tally.vat, tally.discount, System.nanoTime() - start);
+        LOGGER.info(String.format("Batch checkout at %s: %s", storeName, summary));
+
+        for(int i = 0; i < users.size(); i++) {
+            if(batch.orders[i] != null)
+                receipts.append(batch.receipts[i / CHUNK], batch.receiptStarts[i], batch.receiptEnds[i]);
+        }
+        return summary;
+    }
+
+    /**
+     * Journals every order and waits for them. Those that fail are dropped from the batch and its tally.
+     * @return The number of orders that failed.
+     */
+    private int journal(Batch batch, Tally tally) {
+        List<CompletableFuture<Void>> appends = new ArrayList<>(batch.orders.length);
+        for(OrderRecord order : batch.orders) {
+            appends.add(order != null ? journal.append(order) : null);
+        }
+
+        int failed = 0;
+        String error = null;
+        for(int i = 0; i < appends.size(); i++) {
+            if(appends.get(i) == null)
+                continue;
+            try {
+                appends.get(i).join();
+            } catch(CompletionException e) {
+                OrderRecord order = batch.orders[i];
+                tally.units -= order.getUnits();
+                tally.net -= order.NET;
+                tally.vat -= order.VAT;
+                tally.discount -= batch.discounts[i];
+                for(BasketLine line : batch.users.get(i).getBasket()) {
+                    if(line.INVENTORY != null)
+                        tally.sold.get(line.INVENTORY).get(line.PRODUCT)[0] -= line.getQuantity();
+                }
+                batch.orders[i] = null;
+                error = e.getCause().getMessage();
+                failed++;
+            }
+        }
+        if(failed > 0)
+            LOGGER.error(String.format("Journal ERROR: %d orders not recorded, left in their baskets: %s", failed, error));
+        return failed;
+    }
+
+    /**
+     * What the tasks fill in, each writing only its own Users' slots.
+     */
+    private static final class Batch {
+        private final String storeName;
+        private final List<User> users;
+        private final long timestamp;
+
+        /** By User, null for empty baskets. */
+        private final OrderRecord[] orders;
+        private final long[] discounts;
+        /** The receipts of each chunk, and where each User's is within its chunk's. */
+        private final StringBuilder[] receipts;
+        private final int[] receiptStarts, receiptEnds;
+
+        private Batch(String storeName, List<User> users, long timestamp) {
+            this.storeName = storeName;
+            this.users = users;
+            this.timestamp = timestamp;
+            this.orders = new OrderRecord[users.size()];
+            this.discounts = new long[users.size()];
+            this.receipts = new StringBuilder[(users.size() + CHUNK - 1) / CHUNK];
+            this.receiptStarts = new int[users.size()];
+            this.receiptEnds = new int[users.size()];
+        }
+    }
+
+    /**
+     * The totals of a run of Users, and their units sold per Product per Inventory.
+     */
+    private static final class Tally {
+        private int orders, empty;
+        private long units, net, vat, discount;
+        private final Map<ProductInventory, Map<ProductItem, int[]>> sold = new HashMap<>();
+
+        private void add(BasketLine line) {
+            if(line.INVENTORY != null)
+                sold.computeIfAbsent(line.INVENTORY, inventory -> new IdentityHashMap<>())
+                        .computeIfAbsent(line.PRODUCT, product -> new int[1])[0] += line.getQuantity();
+        }
+
+        /**
+         * Folds the other Tally into this one, the smaller map into the larger.
+         */
+        private Tally merge(Tally other) {
+            orders += other.orders;
+            empty += other.empty;
+            units += other.units;
+            net += other.net;
+            vat += other.vat;
+            discount += other.discount;
+
+            for(Map.Entry<ProductInventory, Map<ProductItem, int[]>> inventory : other.sold.entrySet()) {
+                Map<ProductItem, int[]> into = sold.get(inventory.getKey());
+                Map<ProductItem, int[]> from = inventory.getValue();
+                if(into == null) {
+                    sold.put(inventory.getKey(), from);
+                    continue;
+                }
+                if(into.size() < from.size()) {
+                    sold.put(inventory.getKey(), from);
+                    Map<ProductItem, int[]> smaller = into;
+                    into = from;
+                    from = smaller;
+                }
+                for(Map.Entry<ProductItem, int[]> product : from.entrySet()) {
+                    int[] count = into.putIfAbsent(product.getKey(), product.getValue());
+                    if(count != null)
+                        count[0] += product.getValue()[0];
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Settles the Users from {@code from} to {@code to}, splitting in half down to single chunks.
+     */
+    private static final class Settle extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int from, to;
+
+        private Settle(Batch batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Tally compute() {
+            if(to - from > CHUNK) {
+                int middle = from + Math.max(1, (to - from) / CHUNK / 2) * CHUNK;
+                Settle right = new Settle(batch, middle, to);
+                right.fork();
+                Tally left = new Settle(batch, from, middle).compute();
+                return left.merge(right.join());
+            }
+
+            Tally tally = new Tally();
+            StringBuilder receipts = new StringBuilder(CHUNK * 512);
+            ReceiptRenderer renderer = ReceiptRenderer.forCurrentThread();
+            for(int i = from; i < to; i++) {
+                User user = batch.users.get(i);
+                if(user.getBasketItemCount() == 0) {
+                    tally.empty++;
+                    continue;
+                }
+
+                OrderRecord order = OrderRecord.fromBasket(user, batch.timestamp);
+                batch.orders[i] = order;
+                batch.discounts[i] = user.getBasketDiscountMinorUnits(false);
+                batch.receiptStarts[i] = receipts.length();
+                renderer.render(batch.storeName, user, receipts);
+                batch.receiptEnds[i] = receipts.length();
+
+                tally.orders++;
+                tally.units += order.getUnits();
+                tally.net += order.NET;
+                tally.vat += order.VAT;
+                tally.discount += batch.discounts[i];
+                for(BasketLine line : user.getBasket()) {
+                    tally.add(line);
+                }
+            }
+            batch.receipts[from / CHUNK] = receipts;
+            return tally;
+        }
+    }
+}
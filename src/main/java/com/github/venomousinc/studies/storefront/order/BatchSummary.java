@@ -0,0 +1,43 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import com.github.venomousinc.studies.storefront.store.CurrencyFormat;
+
+/**
+ * The totals of one {@link BatchCheckout} run, in minor units.
+ */
+
+public final class BatchSummary {
+
+    /** Baskets checked out, and those skipped for being empty or failing to journal. */
+    public final int ORDERS, EMPTY, FAILED;
+    public final long UNITS;
+    /** Totals of the orders checked out, net of promotions. */
+    public final long NET, VAT, DISCOUNT;
+    public final long ELAPSED_NANOS;
+
+    BatchSummary(int orders, int empty, int failed, long units, long net, long vat, long discount, long elapsedNanos) {
+        this.ORDERS = orders;
+        this.EMPTY = empty;
+        this.FAILED = failed;
+        this.UNITS = units;
+        this.NET = net;
+        this.VAT = vat;
+        this.DISCOUNT = discount;
+        this.ELAPSED_NANOS = elapsedNanos;
+    }
+
+    /**
+     * @return Orders checked out per second.
+     */
+    public double getThroughput() {
+        return ELAPSED_NANOS == 0 ? 0 : ORDERS * 1e9 / ELAPSED_NANOS;
+    }
+
+    @Override
+    public String toString() {
+        CurrencyFormat currency = CurrencyFormat.getInstance();
+        return String.format("%d orders (%d empty, %d failed), %d units, net %s, VAT %s, promotions -%s, in %dms (%.0f orders/s)",
+                ORDERS, EMPTY, FAILED, UNITS, currency.format(NET), currency.format(VAT), currency.format(DISCOUNT),
+                ELAPSED_NANOS / 1_000_000, getThroughput());
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import com.github.venomousinc.studies.storefront.store.CurrencyFormat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Rebuilds the sales totals from an {@link OrderJournal}, e.g. after a crash.
+ * <p>
+ * Usage: {@code JournalReplay <journal file>}
+ */
+
+public class JournalReplay {
+
+    private long orders, units, net, vat;
+    private long firstTimestamp = Long.MAX_VALUE, lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * Adds an order to the totals.
+     * @param record
+     */
+    public void accept(OrderRecord record) {
+        orders++;
+        units += record.getUnits();
+        net += record.NET;
+        vat += record.VAT;
+        firstTimestamp = Math.min(firstTimestamp, record.TIMESTAMP);
+        lastTimestamp = Math.max(lastTimestamp, record.TIMESTAMP);
+    }
+
+    /**
+     * @param journal
+     * @return The totals of every intact order in the journal.
+     * @throws IOException
+     */
+    public static JournalReplay replay(Path journal) throws IOException {
+        JournalReplay totals = new JournalReplay();
+        OrderJournal.replay(journal, totals::accept);
+        return totals;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    /** @return The total without VAT, in minor units. */
+    public long getNet() {
+        return net;
+    }
+
+    /** @return The total VAT, in minor units. */
+    public long getVat() {
+        return vat;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length != 1) {
+            System.out.println("Usage: JournalReplay <journal file>");
+            return;
+        }
+
+        JournalReplay totals = replay(Paths.get(args[0]));
+        CurrencyFormat currency = CurrencyFormat.getInstance();
+        System.out.format("Orders: %d%n", totals.orders);
+        System.out.format("Units: %d%n", totals.units);
+        System.out.format("Total: %s%n", currency.format(totals.net));
+        System.out.format("VAT: %s%n", currency.format(totals.vat));
+        System.out.format("Total with VAT: %s%n", currency.format(totals.net + totals.vat));
+    }
+}
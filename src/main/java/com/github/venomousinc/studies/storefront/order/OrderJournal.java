@@ -0,0 +1,294 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of {@link OrderRecord}s, one per checkout.
+ * <p>
+ * Appends are handed to a single writer thread which drains everything queued since its last flush,
+ * writes it in one go and then calls {@link FileChannel#force(boolean)} once for the whole group.
+ * Under load many checkouts share a single disk flush, rather than each paying for its own.
+ * The group's futures are completed on a separate thread, so whatever callers chain onto them never holds up the
+ * next group.
+ * <p>
+ * Each entry is {@code int length, int CRC32, payload}. {@link #replay(Path, Consumer)} stops at the first
+ * torn or corrupt entry, which is where a crash mid-write would leave the file. A group that fails to write is cut
+ * off the end of the file before the next is written, so a torn entry never hides good ones after it.
+ */
+
+public class OrderJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( OrderJournal.class );
+
+    private static final int ENTRY_HEADER_SIZE = 8;
+
+    /**
+     * Queued by {@link #close()}, the writer stops once it reaches it.
+     */
+    private static final PendingAppend SHUTDOWN = new PendingAppend(null);
+
+    private final FileChannel channel;
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    /** Completes the futures of each group written. */
+    private final ExecutorService completions;
+    private boolean closed;
+
+    /**
+     * The length of the file up to the last group forced to disk, only used by the writer.
+     */
+    private long committed;
+    /**
+     * Set when a group failed to write and the file has not yet been cut back to {@link #committed}.
+     */
+    private boolean torn;
+
+    /**
+     * Opens the journal for appending, creating it if needed. Any torn entry left by a crash is truncated first.
+     * @param file
+     * @throws IOException
+     */
+    public OrderJournal(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long validLength = replay(channel, record -> { });
+        if(validLength < channel.size()) {
+            LOGGER.warn(String.format("Truncating %d bytes of torn journal entries", channel.size() - validLength));
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+        this.committed = validLength;
+
+        this.completions = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-journal-completion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer = new Thread(this::writeLoop, "order-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the record to be written.
+     * @param record
+     * @return Completes once the record is durable on disk, or exceptionally if it could not be written.
+     * Failing does not prove the record is absent: a crash before the failed write is cut off can leave it in the file.
+     * Completes on the journal's own thread, so anything slow chained onto it should be handed to another executor.
+     */
+    public CompletableFuture<Void> append(OrderRecord record) {
+        PendingAppend pending = new PendingAppend(record);
+        synchronized (this) {
+            if(closed) {
+                pending.future.completeExceptionally(new IOException("Journal is closed"));
+            } else {
+                queue.add(pending);
+            }
+        }
+        return pending.future;
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> group = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        boolean running = true;
+
+        while(running) {
+            try {
+                group.add(queue.take());
+                queue.drainTo(group);
+            } catch(InterruptedException e) {
+                continue;
+            }
+
+            running = !group.remove(SHUTDOWN);
+            if(group.isEmpty())
+                continue;
+
+            try {
+                if(torn)
+                    cutBack();
+                for(PendingAppend pending : group) {
+                    buffer = encode(buffer, pending.record);
+                    if(buffer.position() > buffer.capacity() / 2) {
+                        flush(buffer);
+                    }
+                }
+                flush(buffer);
+                channel.force(false);
+                committed = channel.position();
+                complete(group, null);
+            } catch(IOException | RuntimeException e) {
+                LOGGER.error(String.format("Journal ERROR: %s", e.getMessage()));
+                complete(group, e);
+                buffer.clear();
+                torn = true;
+                try {
+                    cutBack();
+                } catch(IOException | RuntimeException again) {
+                    LOGGER.error(String.format("Journal ERROR: could not truncate to %d bytes, retrying before the next append: %s",
+                            committed, again.getMessage()));
+                }
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Truncates whatever part of a failed group reached the file, and writes the next group from the last good one.
+     * @throws IOException If the file could not be truncated, leaving {@link #torn} set.
+     */
+    private void cutBack() throws IOException {
+        channel.truncate(committed);
+        channel.position(committed);
+        channel.force(false);
+        torn = false;
+    }
+
+    /**
+     * Hands the group's futures to the completion thread.
+     * @param failure Why the group could not be written, or null if it was.
+     */
+    private void complete(List<PendingAppend> group, Throwable failure) {
+        List<PendingAppend> written = new ArrayList<>(group);
+        completions.execute(() -> {
+            for(PendingAppend pending : written) {
+                if(failure == null) {
+                    pending.future.complete(null);
+                } else {
+                    pending.future.completeExceptionally(failure);
+                }
+            }
+        });
+    }
+
+    private ByteBuffer encode(ByteBuffer buffer, OrderRecord record) {
+        int size = record.encodedSize();
+        if(buffer.remaining() < ENTRY_HEADER_SIZE + size) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + ENTRY_HEADER_SIZE + size));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        int start = buffer.position();
+        buffer.position(start + ENTRY_HEADER_SIZE);
+        record.writeTo(buffer);
+
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(start + ENTRY_HEADER_SIZE).limit(start + ENTRY_HEADER_SIZE + size);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        buffer.putInt(start, size);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        return buffer;
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Stops accepting appends, waits for the queued ones to be written, then closes the file.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if(closed)
+                return;
+            closed = true;
+            queue.add(SHUTDOWN);
+        }
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        completions.shutdown();
+        channel.close();
+    }
+
+    /**
+     * Reads every intact record in the journal, in the order they were written.
+     * @param file
+     * @param consumer Called for each record.
+     * @return The number of bytes of intact records, anything after that was torn by a crash.
+     * @throws IOException
+     */
+    public static long replay(Path file, Consumer<OrderRecord> consumer) throws IOException {
+        if(!Files.exists(file))
+            return 0;
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return replay(channel, consumer);
+        }
+    }
+
+    private static long replay(FileChannel channel, Consumer<OrderRecord> consumer) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        long position = 0;
+        long size = channel.size();
+
+        while(position + ENTRY_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if(length <= 0 || position + ENTRY_HEADER_SIZE + length > size)
+                break;
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + ENTRY_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if((int) crc.getValue() != checksum)
+                break;
+
+            payload.flip();
+            consumer.accept(OrderRecord.readFrom(payload));
+            position += ENTRY_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if(read < 0)
+                throw new IOException("Unexpected end of journal");
+        }
+    }
+
+    private static final class PendingAppend {
+        private final OrderRecord record;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingAppend(OrderRecord record) {
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import com.github.venomousinc.studies.storefront.user.BasketLine;
+import com.github.venomousinc.studies.storefront.user.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A completed checkout, as written to the {@link OrderJournal}.
+ */
+
+public class OrderRecord {
+
+    public final String USERNAME;
+    public final long TIMESTAMP;
+    private final long[] serialNumbers;
+    private final int[] quantities;
+    /** Totals in minor units. */
+    public final long NET, VAT;
+
+    public OrderRecord(String username, long timestamp, long[] serialNumbers, int[] quantities, long net, long vat) {
+        if(serialNumbers.length != quantities.length)
+            throw new IllegalArgumentException("Every serial number needs a quantity");
+        if(username.getBytes(StandardCharsets.UTF_8).length > 0xFFFF)
+            throw new IllegalArgumentException("Username is too long to record");
+
+        this.USERNAME = username;
+        this.TIMESTAMP = timestamp;
+        this.serialNumbers = serialNumbers;
+        this.quantities = quantities;
+        this.NET = net;
+        this.VAT = vat;
+    }
+
+    /**
+     * Records the {@link User}'s basket as it stands, call this before {@link User#checkout()} empties it.
+     * @param user
+     * @param timestamp Milliseconds since the epoch.
+     * @return
+     */
+    public static OrderRecord fromBasket(User user, long timestamp) {
+        long[] serialNumbers = new long[user.getBasket().size()];
+        int[] quantities = new int[serialNumbers.length];
+
+        int i = 0;
+        for(BasketLine line : user.getBasket()) {
+            serialNumbers[i] = line.PRODUCT.SERIAL_NUMBER;
+            quantities[i] = line.getQuantity();
+            i++;
+        }
+
+        return new OrderRecord(user.getUsername(), timestamp, serialNumbers, quantities,
+                user.getBasketTotalMinorUnits(false), user.getBasketVATMinorUnits());
+    }
+
+    /**
+     * @return The number of distinct Products in the order.
+     */
+    public int getLineCount() {
+        return serialNumbers.length;
+    }
+
+    public long getSerialNumber(int line) {
+        return serialNumbers[line];
+    }
+
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    /**
+     * @return The number of units in the order, counting each quantity.
+     */
+    public long getUnits() {
+        long units = 0;
+        for(int quantity : quantities) {
+            units += quantity;
+        }
+        return units;
+    }
+
+    /**
+     * @return The size of {@link #writeTo(ByteBuffer)}'s output.
+     */
+    int encodedSize() {
+        return 8 + 2 + USERNAME.getBytes(StandardCharsets.UTF_8).length + 4 + serialNumbers.length * 12 + 16;
+    }
+
+    void writeTo(ByteBuffer out) {
+        byte[] username = USERNAME.getBytes(StandardCharsets.UTF_8);
+        out.putLong(TIMESTAMP);
+        out.putShort((short) username.length);
+        out.put(username);
+        out.putInt(serialNumbers.length);
+        for(int i = 0; i < serialNumbers.length; i++) {
+            out.putLong(serialNumbers[i]);
+            out.putInt(quantities[i]);
+        }
+        out.putLong(NET);
+        out.putLong(VAT);
+    }
+
+    static OrderRecord readFrom(ByteBuffer in) {
+        long timestamp = in.getLong();
+        byte[] username = new byte[in.getShort() & 0xFFFF];
+        in.get(username);
+
+        int lines = in.getInt();
+        long[] serialNumbers = new long[lines];
+        int[] quantities = new int[lines];
+        for(int i = 0; i < lines; i++) {
+            serialNumbers[i] = in.getLong();
+            quantities[i] = in.getInt();
+        }
+
+        return new OrderRecord(new String(username, StandardCharsets.UTF_8), timestamp,
+                serialNumbers, quantities, in.getLong(), in.getLong());
+    }
+}
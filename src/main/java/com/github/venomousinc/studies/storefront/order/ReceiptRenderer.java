@@ -0,0 +1,164 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import com.github.venomousinc.studies.storefront.store.CurrencyFormat;
+import com.github.venomousinc.studies.storefront.user.BasketLine;
+import com.github.venomousinc.studies.storefront.user.User;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders a {@link User}'s basket as a printed receipt.
+ * <p>
+ * Each receipt is built in a reused buffer with a cached {@link CurrencyFormat}, then handed to the
+ * {@link Writer} in a single write. A renderer is not thread-safe, use {@link #forCurrentThread()}.
+ */
+
+public class ReceiptRenderer {
+
+    private static final ThreadLocal<ReceiptRenderer> RENDERERS = ThreadLocal.withInitial(ReceiptRenderer::new);
+
+    private static final String NEW_LINE = System.lineSeparator();
+
+    /**
+     * {@link #writeAll(String, Iterable, Writer)} hands receipts to the Writer once this many characters are buffered.
+     */
+    private static final int BATCH_CHARACTERS = 64 * 1024;
+
+    private final CurrencyFormat currency;
+    private final StringBuilder buffer = new StringBuilder(1024);
+    private char[] chars = new char[1024];
+
+    public ReceiptRenderer() {
+        this(CurrencyFormat.getInstance());
+    }
+
+    public ReceiptRenderer(CurrencyFormat currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * @return A renderer for the default locale, owned by the calling thread.
+     */
+    public static ReceiptRenderer forCurrentThread() {
+        return RENDERERS.get();
+    }
+
+    /**
+     * Appends the receipt for the {@link User}'s basket.
+     * @param storeName
+     * @param user
+     * @param out
+     * @return {@code out}
+     */
+    public StringBuilder render(String storeName, User user, StringBuilder out) {
+        out.append("**RECEIPT** ");
+        int start = out.length();
+        out.append(storeName);
+        alignRight(out, start, 15);
+        out.append(" - NO REFUNDS! **").append(NEW_LINE);
+
+        for(BasketLine line : user.getBasket()) {
+            out.append("** ");
+            start = out.length();
+            out.append(line.getQuantity());
+            alignRight(out, start, 3);
+            out.append("x ");
+
+            start = out.length();
+            out.append(line.PRODUCT.NAME);
+            padRight(out, start, 21);
+            out.append(' ');
+
+            start = out.length();
+            currency.format(line.getUnitPriceMinorUnits(true) * line.getQuantity(), out);
+            padRight(out, start, 6);
+            out.append(" (");
+            currency.format(line.getUnitTaxMinorUnits() * line.getQuantity(), out);
+            out.append(')').append(NEW_LINE);
+        }
+
+        long discount = user.getBasketDiscountMinorUnits(true);
+        if(discount > 0) {
+            out.append(" *** Promotions: -");
+            currency.format(discount, out).append(NEW_LINE);
+        }
+        out.append(" *** Total: ");
+        currency.format(user.getBasketTotalMinorUnits(false), out).append(NEW_LINE);
+        out.append(" *** VAT: ");
+        currency.format(user.getBasketVATMinorUnits(), out).append(NEW_LINE);
+        out.append(" *** Total with VAT: ");
+        currency.format(user.getBasketTotalMinorUnits(true), out).append(NEW_LINE);
+        return out;
+    }
+
+    /**
+     * Renders one receipt and writes it in a single call, then flushes.
+     * @param storeName
+     * @param user
+     * @param out
+     * @throws IOException
+     */
+    public void write(String storeName, User user, Writer out) throws IOException {
+        buffer.setLength(0);
+        render(storeName, user, buffer);
+        drain(out);
+        out.flush();
+    }
+
+    /**
+     * Renders a receipt for every {@link User}, writing them in large blocks rather than one at a time.
+     * @param storeName
+     * @param users
+     * @param out Not flushed, so it may keep buffering.
+     * @return The number of receipts written.
+     * @throws IOException
+     */
+    public int writeAll(String storeName, Iterable<User> users, Writer out) throws IOException {
+        int count = 0;
+        buffer.setLength(0);
+
+        for(User user : users) {
+            render(storeName, user, buffer);
+            count++;
+            if(buffer.length() >= BATCH_CHARACTERS)
+                drain(out);
+        }
+        drain(out);
+        return count;
+    }
+
+    /**
+     * Writes and empties the {@link #buffer}, copying through a reused array so no String is created.
+     */
+    private void drain(Writer out) throws IOException {
+        int length = buffer.length();
+        if(length == 0)
+            return;
+
+        if(chars.length < length)
+            chars = new char[Math.max(length, chars.length * 2)];
+        buffer.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * The same as {@code %-Ns}: pads what was appended since {@code start} with spaces up to the width.
+     */
+    private static void padRight(StringBuilder out, int start, int width) {
+        for(int length = out.length() - start; length < width; length++) {
+            out.append(' ');
+        }
+    }
+
+    /**
+     * The same as {@code %Ns}: moves what was appended since {@code start} to the right, within the width.
+     */
+    private static void alignRight(StringBuilder out, int start, int width) {
+        int padding = width - (out.length() - start);
+        for(int i = 0; i < padding; i++) {
+            out.insert(start, ' ');
+        }
+    }
+}
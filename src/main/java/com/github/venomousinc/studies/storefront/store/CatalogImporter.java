@@ -0,0 +1,351 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Streams a delimited (CSV or TSV) catalog file into a {@link ProductInventory}.
+ * <p>
+ * Each row is {@code name, description, type, rrp[, discount[, stock]]}. The description, discount and stock
+ * may be left empty, and the type is matched against {@link ProductType#name()} or {@link ProductType#fixedName()},
+ * ignoring case. Blank lines and lines starting with {@code #} are skipped. Rows with a discount outside 0% to 100%,
+ * or a serial number the Inventory already holds, are rejected.
+ * <p>
+ * The file is read one batch of rows at a time: while a batch is parsed in parallel, the next one is being read,
+ * and each parsed batch is inserted with a single {@link ProductInventory#createProducts(java.util.Collection)}.
+ *
+ * @see Result
+ */
+
+public class CatalogImporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( CatalogImporter.class );
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    /**
+     * How many rejected rows are kept in a {@link Result}, the rest are only counted.
+     */
+    public static final int MAXIMUM_REJECTIONS_KEPT = 100;
+
+    /**
+     * {@link ProductType}s by upper-case {@link ProductType#name()} and {@link ProductType#fixedName()}.
+     */
+    private static final HashMap<String, ProductType> TYPES_BY_NAME = new HashMap<>();
+
+    static {
+        for(ProductType type : ProductType.values()) {
+            TYPES_BY_NAME.put(type.name(), type);
+            TYPES_BY_NAME.put(type.fixedName(), type);
+        }
+    }
+
+    private final ProductInventory inventory;
+    private final char delimiter;
+    private final boolean skipHeader;
+    private final int batchSize;
+
+    /**
+     * @param inventory The Inventory to import into.
+     * @param delimiter The column separator, e.g. {@code ','} or {@code '\t'}
+     * @param skipHeader Should the first row be ignored?
+     * @param batchSize The number of rows parsed and inserted together.
+     */
+    public CatalogImporter(ProductInventory inventory, char delimiter, boolean skipHeader, int batchSize) {
+        if(batchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+
+        this.inventory = inventory;
+        this.delimiter = delimiter;
+        this.skipHeader = skipHeader;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * An importer with the {@link #DEFAULT_BATCH_SIZE}, picking the delimiter from the file extension:
+     * {@code .tsv} is tab separated, anything else is comma separated.
+     * @param inventory
+     * @param file
+     * @param skipHeader
+     * @return
+     */
+    public static CatalogImporter forFile(ProductInventory inventory, Path file, boolean skipHeader) {
+        boolean tabs = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".tsv");
+        return new CatalogImporter(inventory, tabs ? '\t' : ',', skipHeader, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @see #importFrom(Reader)
+     * @param file A UTF-8 encoded catalog.
+     * @return
+     * @throws IOException
+     */
+    public Result importFrom(Path file) throws IOException {
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader);
+        }
+    }
+
+    /**
+     * Reads every row from the reader into the {@link ProductInventory}.
+     * @param source The catalog rows, it is not closed.
+     * @return What was imported and rejected.
+     * @throws IOException
+     */
+    public Result importFrom(Reader source) throws IOException {
+        BufferedReader reader = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+        Result result = new Result();
+        long started = System.nanoTime();
+
+        if(skipHeader && reader.readLine() != null)
+            result.rowsRead++;
+
+        CompletableFuture<List<Object>> pending = null;
+        while(true) {
+            long firstLine = result.rowsRead + 1;
+            List<String> rows = readBatch(reader);
+            result.rowsRead += rows.size();
+
+            CompletableFuture<List<Object>> parsing = rows.isEmpty() ? null
+                    : CompletableFuture.supplyAsync(() -> parseBatch(rows, firstLine));
+
+            if(pending != null)
+                insert(pending, result);
+
+            if(parsing == null)
+                break;
+            pending = parsing;
+        }
+
+        result.elapsedNanos = System.nanoTime() - started;
+        LOGGER.info(String.format("Imported %d products, rejected %d of %d rows (%.0f rows/s)",
+                result.imported, result.rejected, result.rowsRead, result.getRowsPerSecond()));
+        return result;
+    }
+
+    private List<String> readBatch(BufferedReader reader) throws IOException {
+        List<String> rows = new ArrayList<>(batchSize);
+        String line;
+        while(rows.size() < batchSize && (line = reader.readLine()) != null) {
+            rows.add(line);
+        }
+        return rows;
+    }
+
+    /**
+     * @return A {@link ParsedRow}, a {@link Rejection}, or null for a skipped line, for each row in order.
+     */
+    private List<Object> parseBatch(List<String> rows, long firstLine) {
+        return IntStream.range(0, rows.size()).parallel()
+                .mapToObj(i -> parseRow(rows.get(i), firstLine + i))
+                .collect(Collectors.toList());
+    }
+
+    private void insert(CompletableFuture<List<Object>> parsed, Result result) {
+        List<Object> rows = parsed.join();
+        List<ProductItem> items = new ArrayList<>(rows.size());
+        int[] stock = new int[rows.size()];
+        for(Object row : rows) {
+            if(row instanceof ParsedRow) {
+                stock[items.size()] = ((ParsedRow) row).stock;
+                items.add(((ParsedRow) row).item);
+            }
+        }
+        // Stock levels go in with the batch, so a shopper can't reserve a row before its stock is set
+        result.imported += inventory.createProducts(items, Arrays.copyOf(stock, items.size()));
+
+        // Anything the Inventory skipped is rejected in file order
+        for(Object row : rows) {
+            if(row instanceof ParsedRow) {
+                ParsedRow parsedRow = (ParsedRow) row;
+                if(inventory.getProduct(parsedRow.item.SERIAL_NUMBER) != parsedRow.item) {
+                    result.reject(new Rejection(parsedRow.lineNumber, parsedRow.line,
+                            "Duplicate serial number: " + parsedRow.item.SERIAL_NUMBER));
+                }
+            } else if(row instanceof Rejection) {
+                result.reject((Rejection) row);
+            }
+        }
+    }
+
+    private Object parseRow(String line, long lineNumber) {
+        if(line.trim().isEmpty() || line.startsWith("#"))
+            return null;
+
+        List<String> columns = split(line);
+        if(columns == null)
+            return new Rejection(lineNumber, line, "Unterminated quote");
+        if(columns.size() < 4 || columns.size() > 6)
+            return new Rejection(lineNumber, line, "Expected 4 to 6 columns, found " + columns.size());
+
+        String name = columns.get(0).trim();
+        if(name.isEmpty())
+            return new Rejection(lineNumber, line, "Missing name");
+
+        ProductType type = TYPES_BY_NAME.get(columns.get(2).trim().toUpperCase(Locale.ROOT));
+        if(type == null)
+            return new Rejection(lineNumber, line, "Unknown product type: " + columns.get(2));
+
+        try {
+            BigDecimal rrp = new BigDecimal(columns.get(3).trim());
+            if(rrp.signum() < 0)
+                return new Rejection(lineNumber, line, "Negative price: " + rrp);
+
+            String description = columns.get(1).trim();
+            ProductItem item = new ProductItem(name, description.isEmpty() ? null : description, type, rrp);
+
+            String discount = columns.size() > 4 ? columns.get(4).trim() : "";
+            if(!discount.isEmpty()) {
+                BigDecimal percentage = new BigDecimal(discount);
+                int basisPoints = Pricing.toBasisPoints(percentage);
+                if(basisPoints < 0 || basisPoints > Pricing.ONE_HUNDRED_PERCENT)
+                    return new Rejection(lineNumber, line, "Discount must be 0% to 100%: " + percentage);
+                item.setDiscount(percentage);
+            }
+
+            String stock = columns.size() > 5 ? columns.get(5).trim() : "";
+            int quantity = stock.isEmpty() ? -1 : Integer.parseInt(stock);
+            if(!stock.isEmpty() && quantity < 0)
+                return new Rejection(lineNumber, line, "Negative stock: " + quantity);
+
+            return new ParsedRow(lineNumber, line, item, quantity);
+        } catch(NumberFormatException | ArithmeticException e) {
+            return new Rejection(lineNumber, line, "Invalid number: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Splits a row on the {@link #delimiter}, honouring double-quoted columns and {@code ""} escapes.
+     * @return The columns, or null if a quote is left open.
+     */
+    private List<String> split(String line) {
+        List<String> columns = new ArrayList<>(6);
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(quoted) {
+                if(c == '"') {
+                    if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        column.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    column.append(c);
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == delimiter) {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+
+        if(quoted)
+            return null;
+
+        columns.add(column.toString());
+        return columns;
+    }
+
+    private static final class ParsedRow {
+        private final long lineNumber;
+        private final String line;
+        private final ProductItem item;
+        /** The quantity on hand, or -1 if the Product is not stock-tracked. */
+        private final int stock;
+
+        private ParsedRow(long lineNumber, String line, ProductItem item, int stock) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+            this.item = item;
+            this.stock = stock;
+        }
+    }
+
+    /**
+     * A row that could not be imported, and why.
+     */
+    public static final class Rejection {
+        public final long LINE_NUMBER;
+        public final String LINE;
+        public final String REASON;
+
+        private Rejection(long lineNumber, String line, String reason) {
+            this.LINE_NUMBER = lineNumber;
+            this.LINE = line;
+            this.REASON = reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Line %d: %s [%s]", LINE_NUMBER, REASON, LINE);
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        private long rowsRead, imported, rejected, elapsedNanos;
+        private final List<Rejection> rejections = new ArrayList<>();
+
+        private void reject(Rejection rejection) {
+            rejected++;
+            if(rejections.size() < MAXIMUM_REJECTIONS_KEPT)
+                rejections.add(rejection);
+        }
+
+        /**
+         * @return Every line read, including the header, blank lines and comments.
+         */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return Up to {@link #MAXIMUM_REJECTIONS_KEPT} of the rejected rows, in file order.
+         */
+        public List<Rejection> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead * 1e9 / elapsedNanos;
+        }
+    }
+}
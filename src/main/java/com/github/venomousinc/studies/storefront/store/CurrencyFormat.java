@@ -0,0 +1,157 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe, cached replacement for {@link NumberFormat#getCurrencyInstance()}.
+ * <p>
+ * The locale's currency pattern is read once, then minor-unit amounts are written straight into a
+ * {@link StringBuilder} without creating a {@link BigDecimal} or a {@link NumberFormat}.
+ * Currencies that don't have exactly {@link Pricing#MINOR_UNIT_SCALE} decimal places fall back to a
+ * per-thread {@link NumberFormat}.
+ */
+
+public final class CurrencyFormat {
+
+    private static final ConcurrentHashMap<Locale, CurrencyFormat> INSTANCES = new ConcurrentHashMap<>();
+
+    /**
+     * Amounts compared against {@link NumberFormat} before the direct path is trusted for a locale.
+     */
+    private static final long[] SAMPLES = { 0, 5, 99, 105, 123456, -123456, 100000000000L };
+
+    private final Locale locale;
+    private final String positivePrefix, positiveSuffix, negativePrefix, negativeSuffix;
+    private final char decimalSeparator, groupingSeparator, zeroDigit;
+    /** Digits between grouping separators, 0 for no grouping. */
+    private final int groupingSize;
+    /** False if the locale's pattern can't be reproduced here, and {@link #fallback} must be used. */
+    private final boolean direct;
+
+    private final ThreadLocal<NumberFormat> fallback;
+
+    private CurrencyFormat(Locale locale) {
+        this.locale = locale;
+        this.fallback = ThreadLocal.withInitial(() -> NumberFormat.getCurrencyInstance(locale));
+
+        NumberFormat format = NumberFormat.getCurrencyInstance(locale);
+        if(format instanceof DecimalFormat) {
+            DecimalFormat decimalFormat = (DecimalFormat) format;
+            DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+
+            this.positivePrefix = decimalFormat.getPositivePrefix();
+            this.positiveSuffix = decimalFormat.getPositiveSuffix();
+            this.negativePrefix = decimalFormat.getNegativePrefix();
+            this.negativeSuffix = decimalFormat.getNegativeSuffix();
+            this.decimalSeparator = symbols.getMonetaryDecimalSeparator();
+            this.groupingSeparator = symbols.getGroupingSeparator();
+            this.zeroDigit = symbols.getZeroDigit();
+            this.groupingSize = decimalFormat.isGroupingUsed() ? decimalFormat.getGroupingSize() : 0;
+            this.direct = decimalFormat.getMinimumFractionDigits() == Pricing.MINOR_UNIT_SCALE
+                    && decimalFormat.getMaximumFractionDigits() == Pricing.MINOR_UNIT_SCALE
+                    && decimalFormat.getMultiplier() == 1
+                    && matches(format);
+        } else {
+            this.positivePrefix = positiveSuffix = negativePrefix = negativeSuffix = "";
+            this.decimalSeparator = '.';
+            this.groupingSeparator = ',';
+            this.zeroDigit = '0';
+            this.groupingSize = 0;
+            this.direct = false;
+        }
+    }
+
+    /**
+     * @return The format for the default {@link Locale.Category#FORMAT} locale, the same one {@link NumberFormat#getCurrencyInstance()} uses.
+     */
+    public static CurrencyFormat getInstance() {
+        return getInstance(Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    public static CurrencyFormat getInstance(Locale locale) {
+        return INSTANCES.computeIfAbsent(locale, CurrencyFormat::new);
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * @param minorUnits
+     * @return The amount as the locale's currency, e.g. {@code $1,234.50}
+     */
+    public String format(long minorUnits) {
+        return format(minorUnits, new StringBuilder(16)).toString();
+    }
+
+    /**
+     * @see Pricing#toMinorUnits(BigDecimal)
+     * @param amount Rounded to the nearest minor unit.
+     * @return
+     */
+    public String format(BigDecimal amount) {
+        return format(Pricing.toMinorUnits(amount));
+    }
+
+    /**
+     * Appends the amount as the locale's currency.
+     * @param minorUnits
+     * @param out
+     * @return {@code out}
+     */
+    public StringBuilder format(long minorUnits, StringBuilder out) {
+        if(!direct || minorUnits == Long.MIN_VALUE) {
+            return out.append(fallback.get().format(Pricing.toBigDecimal(minorUnits)));
+        }
+        return formatDirect(minorUnits, out);
+    }
+
+    /**
+     * Some locales use separators or patterns the symbols don't expose, e.g. a monetary grouping separator,
+     * so the direct path is only used where it gives exactly what {@link NumberFormat} would.
+     */
+    private boolean matches(NumberFormat format) {
+        StringBuilder direct = new StringBuilder();
+        for(long sample : SAMPLES) {
+            direct.setLength(0);
+            if(!format.format(Pricing.toBigDecimal(sample)).equals(formatDirect(sample, direct).toString()))
+                return false;
+        }
+        return true;
+    }
+
+    private StringBuilder formatDirect(long minorUnits, StringBuilder out) {
+        boolean negative = minorUnits < 0;
+        long amount = Math.abs(minorUnits);
+        out.append(negative ? negativePrefix : positivePrefix);
+
+        int start = out.length();
+        long major = amount / 100;
+        int digits = 0;
+        do {
+            if(groupingSize > 0 && digits > 0 && digits % groupingSize == 0)
+                out.append(groupingSeparator);
+            out.append((char) (zeroDigit + (int) (major % 10)));
+            major /= 10;
+            digits++;
+        } while(major > 0);
+
+        for(int left = start, right = out.length() - 1; left < right; left++, right--) {
+            char c = out.charAt(left);
+            out.setCharAt(left, out.charAt(right));
+            out.setCharAt(right, c);
+        }
+
+        int minor = (int) (amount % 100);
+        out.append(decimalSeparator)
+                .append((char) (zeroDigit + minor / 10))
+                .append((char) (zeroDigit + minor % 10));
+
+        return out.append(negative ? negativeSuffix : positiveSuffix);
+    }
+}
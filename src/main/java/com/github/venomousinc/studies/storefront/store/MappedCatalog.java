@@ -0,0 +1,313 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import com.github.venomousinc.studies.storefront.Storefront;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only {@link Storefront} catalog held in a memory-mapped binary file.
+ * <p>
+ * Records are read straight from the mapping, so opening a catalog costs the same however many Products it holds.
+ * {@link ProductItem}s are only created when {@link #getProduct(int)} asks for them.
+ * <p>
+ * The file is big-endian and laid out as:
+ * <pre>
+ * header          MAGIC, VERSION, record count, ProductType count, string table offset, storefront name
+ * category starts int[ProductType count + 1], the first record of each {@link ProductType#ordinal()}
+ * records         {@link #RECORD_SIZE} bytes each, grouped by ProductType:
+ *                 serial (long), name (int), description (int), type (int), RRP in pence (long),
+ *                 discount in basis points (int), stock or -1 (int), reserved (int)
+ * string table    int length + UTF-8 bytes, referenced by offset from the start of the table
+ * </pre>
+ *
+ * @see #write(Storefront, Path)
+ * @see #open(Path)
+ */
+
+public class MappedCatalog {
+
+    /** {@code SFC1} */
+    public static final int MAGIC = 0x53464331;
+    public static final int VERSION = 1;
+    public static final int RECORD_SIZE = 40;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int SERIAL = 0, NAME = 8, DESCRIPTION = 12, TYPE = 16, RRP = 20, DISCOUNT = 28, STOCK = 32;
+
+    private static final ProductType[] TYPES = ProductType.values();
+
+    private final ByteBuffer buffer;
+    private final int recordCount;
+    private final int recordsOffset;
+    private final int stringTableOffset;
+    private final int[] categoryStarts;
+    private final String storefrontName;
+
+    /**
+     * Products already created by {@link #getProduct(int)}, so each record always maps to the same {@link ProductItem}.
+     */
+    private volatile AtomicReferenceArray<ProductItem> products;
+
+    private MappedCatalog(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if(buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a catalog file");
+        if(buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported catalog version: " + buffer.getInt(4));
+        if(buffer.getInt(12) != TYPES.length)
+            throw new IOException("Catalog was written with " + buffer.getInt(12) + " ProductTypes, expected " + TYPES.length);
+
+        this.recordCount = buffer.getInt(8);
+        this.stringTableOffset = Math.toIntExact(buffer.getLong(16));
+        this.categoryStarts = new int[TYPES.length + 1];
+        for(int i = 0; i < categoryStarts.length; i++) {
+            categoryStarts[i] = buffer.getInt(HEADER_SIZE + i * 4);
+        }
+        this.recordsOffset = recordsOffset();
+        this.storefrontName = readString(buffer.getInt(24));
+    }
+
+    /**
+     * Maps a catalog file written by {@link #write(Storefront, Path)}.
+     * @param file
+     * @return
+     * @throws IOException If the file is not a catalog, or was written for a different set of {@link ProductType}s.
+     */
+    public static MappedCatalog open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedCatalog(mapped);
+        }
+    }
+
+    /**
+     * Writes every Product in the {@link Storefront}'s {@link ProductInventory}, with its discount and stock level.
+     * @param storefront
+     * @param file Replaced if it already exists.
+     * @throws IOException
+     */
+    public static void write(Storefront storefront, Path file) throws IOException {
+        ProductInventory inventory = storefront.getInventory();
+        ProductInventory.Snapshot snapshot = inventory.getSnapshot();
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringTable = new DataOutputStream(strings);
+        int nameRef = appendString(stringTable, storefront.getName());
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            int[] categoryStarts = new int[TYPES.length + 1];
+            for(int i = 0; i < TYPES.length; i++) {
+                categoryStarts[i + 1] = categoryStarts[i] + snapshot.getProducts(TYPES[i]).size();
+            }
+            int recordCount = categoryStarts[TYPES.length];
+            long stringTableOffset = recordsOffset() + (long) recordCount * RECORD_SIZE;
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(recordCount);
+            out.writeInt(TYPES.length);
+            out.writeLong(stringTableOffset);
+            out.writeInt(nameRef);
+            out.writeInt(0);
+            for(int start : categoryStarts) {
+                out.writeInt(start);
+            }
+            for(int i = HEADER_SIZE + categoryStarts.length * 4; i < recordsOffset(); i++) {
+                out.writeByte(0);
+            }
+
+            for(ProductType type : TYPES) {
+                for(ProductItem item : snapshot.getProducts(type)) {
+                    StockLevel stock = inventory.getStock(item);
+                    out.writeLong(item.SERIAL_NUMBER);
+                    out.writeInt(appendString(stringTable, item.NAME));
+                    out.writeInt(appendString(stringTable, item.DESCRIPTION));
+                    out.writeInt(type.ordinal());
+                    out.writeLong(item.getPriceMinorUnits(false, false));
+                    out.writeInt(Pricing.toBasisPoints(item.getPromotionalDiscount()));
+                    out.writeInt(stock == null ? -1 : stock.getAvailable());
+                    out.writeInt(0);
+                }
+            }
+
+            if(stringTableOffset + strings.size() > Integer.MAX_VALUE)
+                throw new IOException("Catalog is too large to be mapped: " + (stringTableOffset + strings.size()) + " bytes");
+            strings.writeTo(out);
+        }
+    }
+
+    /**
+     * Creates a mutable {@link Storefront} holding every Product in this catalog, along with its discount and stock level.
+     * @return
+     */
+    public Storefront toStorefront() {
+        Storefront storefront = new Storefront(storefrontName);
+        ProductInventory inventory = storefront.getInventory();
+        List<ProductItem> items = new ArrayList<>(recordCount);
+        int[] stock = new int[recordCount];
+
+        for(int i = 0; i < recordCount; i++) {
+            items.add(getProduct(i));
+            stock[i] = getStock(i);
+        }
+        inventory.createProducts(items, stock);
+        return storefront;
+    }
+
+    public String getStorefrontName() {
+        return storefrontName;
+    }
+
+    /**
+     * @return The number of Products in the catalog.
+     */
+    public int size() {
+        return recordCount;
+    }
+
+    /**
+     * Records are grouped by {@link ProductType}, a category is the records
+     * from {@link #getCategoryStart(ProductType)} up to {@link #getCategoryEnd(ProductType)}.
+     * @param type
+     * @return The index of the first record of this type.
+     */
+    public int getCategoryStart(ProductType type) {
+        return categoryStarts[type.ordinal()];
+    }
+
+    /**
+     * @see #getCategoryStart(ProductType)
+     * @param type
+     * @return The index after the last record of this type.
+     */
+    public int getCategoryEnd(ProductType type) {
+        return categoryStarts[type.ordinal() + 1];
+    }
+
+    public long getSerialNumber(int index) {
+        return buffer.getLong(record(index) + SERIAL);
+    }
+
+    public String getName(int index) {
+        return readString(buffer.getInt(record(index) + NAME));
+    }
+
+    public String getDescription(int index) {
+        return readString(buffer.getInt(record(index) + DESCRIPTION));
+    }
+
+    public ProductType getType(int index) {
+        return TYPES[buffer.getInt(record(index) + TYPE)];
+    }
+
+    public long getRrpMinorUnits(int index) {
+        return buffer.getLong(record(index) + RRP);
+    }
+
+    public int getDiscountBasisPoints(int index) {
+        return buffer.getInt(record(index) + DISCOUNT);
+    }
+
+    /**
+     * @param index
+     * @return The quantity on hand when the catalog was written, or -1 if the Product is not stock-tracked.
+     */
+    public int getStock(int index) {
+        return buffer.getInt(record(index) + STOCK);
+    }
+
+    /**
+     * The price of a record in minor units, without creating its {@link ProductItem}.
+     * @see ProductItem#getPriceMinorUnits(boolean, boolean)
+     * @param index
+     * @param withDiscount
+     * @param withTax
+     * @return
+     */
+    public long getPriceMinorUnits(int index, boolean withDiscount, boolean withTax) {
+        long price = getRrpMinorUnits(index);
+        int discount = getDiscountBasisPoints(index);
+
+        if(withDiscount && discount != 0)
+            price = Pricing.withDiscount(price, discount);
+        if(withTax)
+            price = getType(index).taxedPrice(price);
+        return price;
+    }
+
+    /**
+     * Creates the {@link ProductItem} for a record the first time it is asked for, and returns the same one afterwards.
+     * @param index
+     * @return
+     */
+    public ProductItem getProduct(int index) {
+        AtomicReferenceArray<ProductItem> created = products;
+        if(created == null) {
+            synchronized (this) {
+                created = products;
+                if(created == null)
+                    products = created = new AtomicReferenceArray<>(recordCount);
+            }
+        }
+
+        ProductItem item = created.get(index);
+        if(item == null) {
+            item = new ProductItem(getSerialNumber(index), getName(index), getDescription(index), getType(index),
+                    Pricing.toBigDecimal(getRrpMinorUnits(index)));
+            int discount = getDiscountBasisPoints(index);
+            if(discount != 0)
+                item.setDiscount(BigDecimal.valueOf(discount, 2));
+
+            if(!created.compareAndSet(index, null, item))
+                item = created.get(index);
+        }
+        return item;
+    }
+
+    private int record(int index) {
+        if(index < 0 || index >= recordCount)
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+
+        return recordsOffset + index * RECORD_SIZE;
+    }
+
+    private String readString(int ref) {
+        int position = stringTableOffset + ref;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int appendString(DataOutputStream table, String value) throws IOException {
+        int ref = table.size();
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        table.writeInt(bytes.length);
+        table.write(bytes);
+        return ref;
+    }
+
+    /**
+     * @return The records start after the category starts, aligned to 8 bytes.
+     */
+    private static int recordsOffset() {
+        int end = HEADER_SIZE + (TYPES.length + 1) * 4;
+        return (end + 7) & ~7;
+    }
+}
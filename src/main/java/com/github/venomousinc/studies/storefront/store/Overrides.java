@@ -0,0 +1,146 @@
+package com.github.venomousinc.studies.storefront.store;
+
+/**
+ * An Inventory's overrides by {@link ProductItem#SERIAL_NUMBER}: a repriced copy of a Product, or null for a
+ * {@link SharedCatalog} Product the Inventory has removed.
+ * <p>
+ * Never changed once built, so a {@link ProductInventory.Snapshot} shares it with readers without locking.
+ * It is a trie of 32-way nodes on the bits of the serial, and {@link #with(long, ProductItem)} copies only the
+ * nodes on the path to its entry, a few small arrays however many Products are overridden.
+ *
+ * @see ProductInventory#setPrice(ProductItem, java.math.BigDecimal, java.math.BigDecimal)
+ */
+
+final class Overrides {
+
+    static final Overrides EMPTY = new Overrides(null, 0);
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+
+    /** Slots hold an {@link Entry}, a child node, or null. */
+    private final Object[] root;
+    private final int size;
+
+    private Overrides(Object[] root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param serial
+     * @return If the Product is overridden or removed.
+     */
+    boolean containsKey(long serial) {
+        return find(serial) != null;
+    }
+
+    /**
+     * @param serial
+     * @return The copy overriding the Product, or null if it was removed or isn't overridden.
+     */
+    ProductItem get(long serial) {
+        Entry entry = find(serial);
+        return entry != null ? entry.item : null;
+    }
+
+    /**
+     * @param serial
+     * @param item The copy to list instead, or null to mark the Product removed.
+     * @return These overrides with the Product's replaced.
+     */
+    Overrides with(long serial, ProductItem item) {
+        Entry entry = new Entry(serial, item);
+        return new Overrides(put(root, 0, entry), containsKey(serial) ? size : size + 1);
+    }
+
+    /**
+     * @param serial
+     * @return These overrides without the Product's.
+     */
+    Overrides without(long serial) {
+        if(!containsKey(serial))
+            return this;
+        return new Overrides(remove(root, 0, hash(serial)), size - 1);
+    }
+
+    private Entry find(long serial) {
+        long hash = hash(serial);
+        Object[] node = root;
+        for(int shift = 0; node != null; shift += BITS) {
+            Object slot = node[index(hash, shift)];
+            if(slot instanceof Entry) {
+                Entry entry = (Entry) slot;
+                return entry.serial == serial ? entry : null;
+            }
+            node = (Object[]) slot;
+        }
+        return null;
+    }
+
+    /**
+     * @return A copy of the node with the entry in it, pushing any other entry in its slot down a level.
+     */
+    private static Object[] put(Object[] node, int shift, Entry entry) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int i = index(entry.hash, shift);
+        Object slot = copy[i];
+
+        if(slot == null || (slot instanceof Entry && ((Entry) slot).serial == entry.serial)) {
+            copy[i] = entry;
+        } else if(slot instanceof Entry) {
+            // Serials hash one to one, so the two part ways within the 64 bits
+            copy[i] = put(put(null, shift + BITS, (Entry) slot), shift + BITS, entry);
+        } else {
+            copy[i] = put((Object[]) slot, shift + BITS, entry);
+        }
+        return copy;
+    }
+
+    /**
+     * @return A copy of the node without the entry, which must be in it, or null if nothing else is left.
+     */
+    private static Object[] remove(Object[] node, int shift, long hash) {
+        int i = index(hash, shift);
+        Object slot = node[i];
+        Object[] copy = node.clone();
+        copy[i] = slot instanceof Entry ? null : remove((Object[]) slot, shift + BITS, hash);
+
+        for(Object remaining : copy) {
+            if(remaining != null)
+                return copy;
+        }
+        return null;
+    }
+
+    /**
+     * Spreads sequential serials across the trie. Multiplying by an odd constant never maps two serials to one hash.
+     */
+    private static long hash(long serial) {
+        return serial * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int index(long hash, int shift) {
+        return (int) (hash >>> shift) & (WIDTH - 1);
+    }
+
+    private static final class Entry {
+        private final long serial;
+        private final long hash;
+        private final ProductItem item;
+
+        private Entry(long serial, ProductItem item) {
+            this.serial = serial;
+            this.hash = hash(serial);
+            this.item = item;
+        }
+    }
+}
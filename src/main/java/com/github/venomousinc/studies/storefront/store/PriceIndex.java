@@ -0,0 +1,195 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Products of each {@link ProductType} ordered by their discounted price without tax, then by serial.
+ * <p>
+ * An Inventory's own Products and overrides are kept in a skip list per type, so adding or repricing one is
+ * logarithmic. An Inventory built on a {@link SharedCatalog} also reads the catalog's presorted arrays, merging them
+ * with its own entries as it goes, so no store copies or sorts the catalog.
+ * <p>
+ * Writers must be serialized by the caller. Readers never lock, and may briefly miss or misplace a Product while it is repriced.
+ *
+ * @see ProductInventory#getCheapest(ProductType, int)
+ */
+
+class PriceIndex {
+
+    private static final Comparator<ProductItem> BY_PRICE = Comparator
+            .comparingLong(PriceIndex::price)
+            .thenComparingLong(item -> item.SERIAL_NUMBER);
+
+    private final List<ConcurrentSkipListMap<Key, ProductItem>> byType;
+    /**
+     * The key each Product is filed under, by serial, so it can be found again once its price has changed.
+     */
+    private final ConcurrentHashMap<Long, Key> keys = new ConcurrentHashMap<>();
+
+    /**
+     * A {@link SharedCatalog}'s Products sorted {@link #BY_PRICE} by type, and their prices, or null.
+     */
+    private final ProductItem[][] base;
+    private final long[][] basePrices;
+
+    PriceIndex() {
+        this(null, null);
+    }
+
+    /**
+     * @param base From {@link #sort(ProductItem[][], int[])}.
+     * @param basePrices From {@link #prices(ProductItem[][])}.
+     */
+    PriceIndex(ProductItem[][] base, long[][] basePrices) {
+        this.base = base;
+        this.basePrices = basePrices;
+        this.byType = new ArrayList<>(ProductType.values().length);
+        for(int i = 0; i < ProductType.values().length; i++) {
+            byType.add(new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * Files a Product at its current price, replacing any entry for its serial.
+     * @param item
+     */
+    void put(ProductItem item) {
+        Key key = new Key(price(item), item.SERIAL_NUMBER);
+        ConcurrentSkipListMap<Key, ProductItem> entries = byType.get(item.TYPE.ordinal());
+        entries.put(key, item);
+
+        Key previous = keys.put(item.SERIAL_NUMBER, key);
+        if(previous != null && previous.compareTo(key) != 0)
+            entries.remove(previous);
+    }
+
+    void remove(ProductItem item) {
+        Key previous = keys.remove(item.SERIAL_NUMBER);
+        if(previous != null)
+            byType.get(item.TYPE.ordinal()).remove(previous);
+    }
+
+    /**
+     * Collects Products of a type cheapest first, starting strictly after a price and serial.
+     * @param type
+     * @param fromPrice The lowest price, in minor units without tax.
+     * @param afterSerial Skip Products at {@code fromPrice} up to this serial, {@link Long#MIN_VALUE} for none.
+     * @param toPrice The highest price, in minor units without tax.
+     * @param limit
+     * @param overrides The snapshot's overrides, catalog Products in it are replaced or removed.
+     * @return Up to {@code limit} Products.
+     */
+    List<ProductItem> collect(ProductType type, long fromPrice, long afterSerial, long toPrice, int limit,
+                              Overrides overrides) {
+        List<ProductItem> results = new ArrayList<>(Math.min(limit, 64));
+        Key start = new Key(fromPrice, afterSerial);
+        Iterator<Map.Entry<Key, ProductItem>> local = byType.get(type.ordinal()).tailMap(start, false).entrySet().iterator();
+        Map.Entry<Key, ProductItem> next = local.hasNext() ? local.next() : null;
+
+        ProductItem[] sorted = base != null ? base[type.ordinal()] : null;
+        long[] prices = sorted != null ? basePrices[type.ordinal()] : null;
+        int index = sorted != null ? after(sorted, prices, fromPrice, afterSerial) : 0;
+        int end = sorted != null ? sorted.length : 0;
+
+        while(results.size() < limit) {
+            while(index < end && !overrides.isEmpty() && overrides.containsKey(sorted[index].SERIAL_NUMBER)) {
+                index++;
+            }
+
+            boolean fromBase;
+            if(next == null) {
+                fromBase = index < end;
+            } else {
+                fromBase = index < end && (prices[index] < next.getKey().price
+                        || (prices[index] == next.getKey().price && sorted[index].SERIAL_NUMBER < next.getKey().serial));
+            }
+
+            if(fromBase) {
+                if(prices[index] > toPrice)
+                    break;
+                results.add(sorted[index++]);
+            } else if(next != null) {
+                if(next.getKey().price > toPrice)
+                    break;
+                results.add(next.getValue());
+                next = local.hasNext() ? local.next() : null;
+            } else {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return The first position in the sorted array strictly after the price and serial.
+     */
+    private static int after(ProductItem[] sorted, long[] prices, long price, long serial) {
+        int low = 0, high = sorted.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(prices[middle] < price || (prices[middle] == price && sorted[middle].SERIAL_NUMBER <= serial)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Each category sorted by price, for a {@link SharedCatalog}.
+     */
+    static ProductItem[][] sort(ProductItem[][] categories, int[] sizes) {
+        ProductItem[][] sorted = new ProductItem[categories.length][];
+        for(int i = 0; i < categories.length; i++) {
+            if(sizes[i] > 0) {
+                sorted[i] = Arrays.copyOf(categories[i], sizes[i]);
+                Arrays.sort(sorted[i], BY_PRICE);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * @return The price of each sorted Product, read once so the catalog's order can't drift from them.
+     */
+    static long[][] prices(ProductItem[][] sorted) {
+        long[][] prices = new long[sorted.length][];
+        for(int i = 0; i < sorted.length; i++) {
+            if(sorted[i] != null) {
+                prices[i] = new long[sorted[i].length];
+                for(int j = 0; j < sorted[i].length; j++) {
+                    prices[i][j] = price(sorted[i][j]);
+                }
+            }
+        }
+        return prices;
+    }
+
+    static long price(ProductItem item) {
+        return item.getPriceMinorUnits(true, false);
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private final long price;
+        private final long serial;
+
+        private Key(long price, long serial) {
+            this.price = price;
+            this.serial = serial;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byPrice = Long.compare(price, other.price);
+            return byPrice != 0 ? byPrice : Long.compare(serial, other.serial);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point price arithmetic for the Storefront.
+ * <p>
+ * Prices are held as {@code long} minor units (pence) and percentages as {@code int} basis points,
+ * where 10000 basis points is 100%. Every calculation rounds once, using {@link #ROUNDING}, so an
+ * item's tax and discount always land on a whole penny.
+ *
+ * @see ProductItem#getPriceMinorUnits(boolean, boolean)
+ * @see ProductType#getTaxCost(long)
+ */
+
+public final class Pricing {
+
+    /** The number of minor units (pence) in a major unit (pound). */
+    public static final int MINOR_UNIT_SCALE = 2;
+
+    /** Basis points representing 100%. */
+    public static final long ONE_HUNDRED_PERCENT = 10000L;
+
+    /**
+     * The rounding policy applied to every partial penny: halves round away from zero.
+     */
+    public static final RoundingMode ROUNDING = RoundingMode.HALF_UP;
+
+    private Pricing() {
+    }
+
+    /**
+     * Converts a price into minor units, rounding any fraction of a penny with {@link #ROUNDING}.
+     * @param price The price in major units, e.g. 0.60
+     * @return The price in minor units, e.g. 60
+     */
+    public static long toMinorUnits(BigDecimal price) {
+        return price.setScale(MINOR_UNIT_SCALE, ROUNDING).unscaledValue().longValueExact();
+    }
+
+    /**
+     * The {@link BigDecimal} facade of a minor unit amount, for display and formatting.
+     * @param minorUnits The price in minor units, e.g. 60
+     * @return The price in major units, e.g. 0.60
+     */
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, MINOR_UNIT_SCALE);
+    }
+
+    /**
+     * Converts a percentage into basis points, rounding with {@link #ROUNDING}.
+     * @param percentage The percentage, e.g. 20 or 17.5
+     * @return The percentage in basis points, e.g. 2000 or 1750
+     */
+    public static int toBasisPoints(BigDecimal percentage) {
+        return percentage.movePointRight(2).setScale(0, ROUNDING).intValueExact();
+    }
+
+    /**
+     * The given percentage of an amount, rounded to a whole minor unit.
+     *
+     * Equation: {@code (minorUnits * basisPoints) / 10000}
+     * @param minorUnits The amount in minor units.
+     * @param basisPoints The percentage in basis points.
+     * @return The portion of the amount, in minor units.
+     */
+    public static long percentageOf(long minorUnits, int basisPoints) {
+        return divide(Math.multiplyExact(minorUnits, (long) basisPoints), ONE_HUNDRED_PERCENT);
+    }
+
+    /**
+     * @param minorUnits The amount in minor units.
+     * @param taxBasisPoints The tax rate in basis points.
+     * @return The amount with tax added, in minor units.
+     */
+    public static long withTax(long minorUnits, int taxBasisPoints) {
+        return minorUnits + percentageOf(minorUnits, taxBasisPoints);
+    }
+
+    /**
+     * The discounted amount is rounded, rather than the discount, so a price landing on half a minor unit
+     * rounds up just as the same price would in {@link BigDecimal}.
+     *
+     * Equation: {@code (minorUnits * (10000 - discountBasisPoints)) / 10000}
+     * @param minorUnits The amount in minor units.
+     * @param discountBasisPoints The discount in basis points.
+     * @return The amount with the discount taken off, in minor units.
+     */
+    public static long withDiscount(long minorUnits, int discountBasisPoints) {
+        return divide(Math.multiplyExact(minorUnits, ONE_HUNDRED_PERCENT - discountBasisPoints), ONE_HUNDRED_PERCENT);
+    }
+
+    /**
+     * Divides using {@link #ROUNDING}, without going through {@link BigDecimal}.
+     * @param dividend
+     * @param divisor A positive divisor.
+     * @return The rounded quotient.
+     */
+    private static long divide(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+
+        if(remainder * 2 >= divisor) {
+            quotient += dividend < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+}
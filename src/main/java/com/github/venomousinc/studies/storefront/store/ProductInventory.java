@@ -1,84 +1,1095 @@
 package com.github.venomousinc.studies.storefront.store;
 
 import com.github.venomousinc.studies.storefront.Storefront;
+import com.github.venomousinc.studies.storefront.metrics.StorefrontMetrics;
 
+import java.math.BigDecimal;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The Stores Inventory/Stock of Product Items.
+ * <p>
+ * Safe to share between threads. Readers work from an immutable {@link Snapshot} and never lock;
+ * writers are serialized and publish a new {@link Snapshot} once their change is complete.
+ * <p>
+ * An Inventory built on a {@link SharedCatalog} starts out holding the catalog's Products without copying them.
+ * Repricing or removing a catalog Product only affects this Inventory, and is kept as an override of that one Product.
+ * A removed catalog Product stays in the shared arrays, and this Inventory's snapshots skip over it.
+ * <p>
+ * Queries are counted, and a sample of them timed, by {@link StorefrontMetrics}.
  */
 
 public class ProductInventory {
 
+    private static final int INITIAL_CAPACITY = 16;
+
     private final Storefront parent;
+
+    /**
+     * The Products this Inventory is built on, or null if it holds only its own.
+     */
+    private final SharedCatalog catalog;
+
+    /**
+     * Serializes writers, readers never take it.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * The latest published state of the Inventory.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Quantity on hand per Product, keyed by the Product as it was added rather than any override of it.
+     * Products without an entry are not stock-tracked and never run out.
+     */
+    private final ConcurrentHashMap<ProductItem, StockLevel> stock = new ConcurrentHashMap<>();
+
+    /**
+     * Full-text index of the name and description of every Product added to this Inventory, updated under the {@link #writeLock}.
+     */
+    private final SearchIndex searchIndex = new SearchIndex();
+
+    /**
+     * Every Product added to this Inventory by {@link ProductItem#SERIAL_NUMBER}, updated under the {@link #writeLock}.
+     */
+    private final SerialIndex serialIndex = new SerialIndex();
+
     /**
-     * A list of all the Products currently in store.
+     * The promotions running in this Inventory, which reprice its Products under the {@link #writeLock}.
      */
-    private ArrayList<ProductItem> products;
+    private final Promotions promotions = new Promotions(this);
+
+    /**
+     * Products of each type by price, updated under the {@link #writeLock} alongside each {@link Snapshot}.
+     */
+    private final PriceIndex priceIndex;
 
     public ProductInventory(final Storefront parent) {
         this.parent = parent;
-        this.products = new ArrayList<>();
+        this.catalog = null;
+        this.priceIndex = new PriceIndex();
+        this.snapshot = new Snapshot(0, new ProductItem[INITIAL_CAPACITY], 0,
+                new ProductItem[ProductType.values().length][], new int[ProductType.values().length],
+                EnumSet.noneOf(ProductType.class), Overrides.EMPTY, Gaps.NONE, Gaps.none(ProductType.values().length));
+        StorefrontMetrics.trackCatalog(this, inventory -> inventory.snapshot.size());
     }
 
     /**
-     * Loops through all current Products, and creates an EnumSet based on these products.
-     * @see ProductType
-     * @see #products
-     * @see ProductItem
+     * An Inventory holding every Product in the catalog, sharing its arrays and indexes.
+     * @see SharedCatalog
+     * @param parent
+     * @param catalog
+     */
+    public ProductInventory(final Storefront parent, final SharedCatalog catalog) {
+        this.parent = parent;
+        this.catalog = catalog;
+        this.priceIndex = new PriceIndex(catalog.byPrice, catalog.prices);
+        this.snapshot = new Snapshot(0, catalog.products, catalog.products.length,
+                catalog.categories.clone(), catalog.categorySizes.clone(),
+                catalog.stockTypes, Overrides.EMPTY, Gaps.NONE, Gaps.none(ProductType.values().length));
+        StorefrontMetrics.trackCatalog(this, inventory -> inventory.snapshot.size());
+    }
+
+    /**
+     * @return The rates in force where the parent Storefront charges VAT/tax.
+     */
+    public TaxTable getTaxTable() {
+        return parent != null ? parent.getTaxRegion().getTable() : TaxRegion.DEFAULT.getTable();
+    }
+
+    /**
+     * @return The {@link Promotion}s running in this Inventory.
+     */
+    public Promotions getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * The current state of the Inventory. Every read made through the same {@link Snapshot} is consistent,
+     * however many writes happen in the meantime.
+     * @return The latest published {@link Snapshot}.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @see Snapshot#getStockTypes()
      * @return An EnumSet of ProductTypes represented in this Inventory.
      */
     public EnumSet<ProductType> getStockTypes() {
-        if(products == null || products.size() == 0)
-            return null;
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        EnumSet<ProductType> types = snapshot.getStockTypes();
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return types;
+    }
 
-        EnumSet<ProductType> set = EnumSet.noneOf(ProductType.class);
+    /**
+     * @see Snapshot#getProducts()
+     * @return a read-only List of ProductItems
+     */
+    public List<ProductItem> getProducts() {
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        List<ProductItem> products = snapshot.getProducts();
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return products;
+    }
 
-        for(ProductItem item : products) {
-            if(!set.contains(item.TYPE))
-                set.add(item.TYPE);
-        }
+    /**
+     * @see Snapshot#getProducts(ProductType)
+     * @param productType Specified filter.
+     * @return A read-only list of Products with the specified filter.
+     */
+    public List<ProductItem> getProducts(ProductType productType) {
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        List<ProductItem> products = snapshot.getProducts(productType);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return products;
+    }
 
-        return set;
+    /**
+     * @see Snapshot#getPage(ProductType, int, int)
+     */
+    public ProductPage getPage(ProductType productType, int offset, int limit) {
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        ProductPage page = snapshot.getPage(productType, offset, limit);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return page;
     }
 
     /**
-     * @see ProductItem
-     * @return an ArrayList of ProductItems
+     * @see Snapshot#getPage(ProductType, String, int)
+     */
+    public ProductPage getPage(ProductType productType, String cursor, int limit) {
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        ProductPage page = snapshot.getPage(productType, cursor, limit);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return page;
+    }
+
+    /**
+     * The cheapest Products of a type, after discount, in logarithmic time however large the category.
+     * @see #getPriceRange(ProductType, long, long, int)
+     * @param productType
+     * @param count The most Products to return.
+     * @return Up to {@code count} Products, cheapest first, ties in the order they were created.
      */
-    public ArrayList<ProductItem> getProducts() {
+    public List<ProductItem> getCheapest(ProductType productType, int count) {
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        List<ProductItem> products = priceIndex.collect(productType, Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE,
+                count, snapshot.overrides);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
         return products;
     }
 
     /**
-     * Get all products of a specific {@link ProductType}
-     * @see #getProducts()
-     * @param productType Specified filter.
-     * @return A list of Products with the specified filter.
+     * Products of a type priced within a range, cheapest first.
+     * @param productType
+     * @param minimum The lowest price, in minor units after discount and with this Inventory's VAT/tax.
+     * @param maximum The highest price, likewise.
+     * @param limit The most Products to return.
+     * @return Up to {@code limit} Products.
+     */
+    public List<ProductItem> getPriceRange(ProductType productType, long minimum, long maximum, int limit) {
+        if(minimum > maximum)
+            return Collections.emptyList();
+
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        TaxTable taxes = getTaxTable();
+        long from = untaxed(taxes, productType, minimum);
+        long to = maximum == Long.MAX_VALUE ? Long.MAX_VALUE : untaxed(taxes, productType, maximum + 1) - 1;
+        List<ProductItem> products = priceIndex.collect(productType, from, Long.MIN_VALUE, to, limit, snapshot.overrides);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return products;
+    }
+
+    /**
+     * A page of the Products of a type, cheapest first. Following the cursor neither skips nor repeats Products
+     * when others are added, removed or repriced in the meantime, apart from those repriced across it.
+     * @see #getPage(ProductType, String, int)
+     * @param productType
+     * @param cursor From {@link ProductPage#getNextCursor()} of the previous page by price, or null for the first.
+     * @param limit The most Products on the page.
+     * @return A read-only page.
+     * @throws IllegalArgumentException If the cursor is malformed or from another listing.
      */
-    public ArrayList<ProductItem> getProducts(ProductType productType) {
-        ArrayList<ProductItem> productList = new ArrayList<>();
+    public ProductPage getPageByPrice(ProductType productType, String cursor, int limit) {
+        if(limit <= 0)
+            throw new IllegalArgumentException("Bad page: limit " + limit);
 
-        for(ProductItem item : products) {
-            if(item.TYPE.equals(productType)) {
-                productList.add(item);
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        long[] position = cursor == null ? new long[] { 0, Long.MIN_VALUE, Long.MIN_VALUE }
+                : ProductPage.parsePriceCursor(cursor, productType);
+        Snapshot current = snapshot;
+        List<ProductItem> products = priceIndex.collect(productType, position[2], position[1], Long.MAX_VALUE,
+                limit + 1, current.overrides);
+
+        String next = null;
+        int offset = (int) position[0];
+        if(products.size() > limit) {
+            products = products.subList(0, limit);
+            ProductItem last = products.get(limit - 1);
+            next = ProductPage.priceCursor(productType, offset + limit, last.SERIAL_NUMBER, PriceIndex.price(last));
+        }
+        ProductPage page = new ProductPage(Collections.unmodifiableList(products), offset,
+                current.size(productType), next);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return page;
+    }
+
+    /**
+     * Tax never lowers a price and rounds the same way at every price, so the untaxed bound is found by binary search.
+     * @return The lowest price without tax that comes to at least {@code taxedPrice} with it.
+     */
+    private static long untaxed(TaxTable taxes, ProductType productType, long taxedPrice) {
+        if(taxedPrice <= 0)
+            return taxedPrice;
+
+        long low = 0, high = Math.min(taxedPrice, Long.MAX_VALUE / Pricing.ONE_HUNDRED_PERCENT);
+        if(taxes.taxedPrice(productType, high) < taxedPrice)
+            return Long.MAX_VALUE;
+        while(low < high) {
+            long middle = (low + high) >>> 1;
+            if(taxes.taxedPrice(productType, middle) < taxedPrice) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
         }
+        return low;
+    }
 
-        return productList;
+    /**
+     * @see Snapshot#stream(ProductType, boolean)
+     */
+    public Stream<ProductItem> stream(ProductType productType, boolean parallel) {
+        return snapshot.stream(productType, parallel);
     }
 
     /**
-     * Adds a new Product to the {@link #products} {@link ArrayList<ProductItem>}
+     * Adds a new Product to the Inventory and publishes a new {@link Snapshot}.
+     * <p>
+     * Products are appended into spare capacity beyond what earlier snapshots can see,
+     * so adding does not copy the catalog.
      * @see ProductItem
-     * @see #products
+     * @see #createProducts(Collection)
      * @see #getProducts()
      * @see #getStockTypes()
      * @param item The Item to add to the Producsts list.
      * @return The success of adding the ProductItem.
      */
     public boolean createProduct(ProductItem item) {
-        return products.add(item);
+        return createProducts(Collections.singletonList(item)) == 1;
+    }
+
+    /**
+     * Adds a new Product to the Inventory along with its quantity on hand.
+     * @see #createProducts(Collection, int[])
+     * @param item
+     * @param quantity The number of units available to sell.
+     * @return The success of adding the ProductItem.
+     */
+    public boolean createProduct(ProductItem item, int quantity) {
+        return createProducts(Collections.singletonList(item), new int[] { quantity }) == 1;
+    }
+
+    /**
+     * Adds a batch of new Products to the Inventory, publishing a single {@link Snapshot} once all of them are in.
+     * @see #createProduct(ProductItem)
+     * @param items The Items to add, any without a {@link ProductType} or already in the Inventory are skipped.
+     * @return The number of Products added.
+     */
+    public int createProducts(Collection<ProductItem> items) {
+        return createProducts(items, null);
+    }
+
+    /**
+     * Adds a batch of new Products to the Inventory with their quantities on hand, publishing a single {@link Snapshot}
+     * once all of them are in. Each {@link StockLevel} is in place before its Product can be found, so no basket
+     * can reserve a Product that isn't tracked yet.
+     * @see #setStock(ProductItem, int)
+     * @param items The Items to add, any without a {@link ProductType} or already in the Inventory are skipped.
+     * @param quantities The units available of each item, in the order of {@code items}, a negative quantity leaves
+     *                   that Product untracked. Null to track none of them.
+     * @return The number of Products added.
+     */
+    public int createProducts(Collection<ProductItem> items, int[] quantities) {
+        if(quantities != null && quantities.length != items.size())
+            throw new IllegalArgumentException("Every item needs a quantity");
+
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            ProductItem[] products = current.products;
+            int productCount = current.productCount;
+            ProductItem[][] categories = current.categories.clone();
+            int[] categorySizes = current.categorySizes.clone();
+            EnumSet<ProductType> stockTypes = current.stockTypes;
+
+            int position = -1;
+            for(ProductItem item : items) {
+                position++;
+                if(item == null || item.TYPE == null || serialIndex.get(item.SERIAL_NUMBER) != null
+                        || (catalog != null && catalog.getProduct(item.SERIAL_NUMBER) != null))
+                    continue;
+
+                if(promotions.hasItemPromotions()) {
+                    BigDecimal own = item.getPromotionalDiscount();
+                    BigDecimal discount = promotions.effectiveDiscount(item, own);
+                    if(discount != own)
+                        item.setDiscount(discount);
+                }
+
+                if(quantities != null && quantities[position] >= 0)
+                    stock.put(item, new StockLevel(quantities[position]));
+                serialIndex.put(item);
+                priceIndex.put(item);
+                int ordinal = item.TYPE.ordinal();
+                products = append(products, productCount++, item);
+                searchIndex.add(item);
+                categories[ordinal] = append(categories[ordinal], categorySizes[ordinal]++, item);
+
+                if(!stockTypes.contains(item.TYPE)) {
+                    if(stockTypes == current.stockTypes)
+                        stockTypes = stockTypes.clone();
+                    stockTypes.add(item.TYPE);
+                }
+            }
+
+            int added = productCount - current.productCount;
+            if(added > 0) {
+                snapshot = new Snapshot(current.version + 1, products, productCount, categories, categorySizes,
+                        stockTypes, current.overrides, current.productGaps, current.categoryGaps);
+            }
+            return added;
+        }
+    }
+
+    /**
+     * Removes a Product from the Inventory and its category, then publishes a new {@link Snapshot}.
+     * A {@link SharedCatalog} Product is left in the shared arrays and marked removed in this Inventory's overrides.
+     * @see #createProduct(ProductItem)
+     * @param item The Item to remove from the Products list.
+     * @return If the ProductItem was in this Inventory.
+     */
+    public boolean removeProduct(ProductItem item) {
+        if(item == null || item.TYPE == null)
+            return false;
+
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            item = original(item);
+            int ordinal = item.TYPE.ordinal();
+            if(current.resolve(item) == null)
+                return false;
+
+            ProductItem[] products = current.products;
+            int productCount = current.productCount;
+            ProductItem[][] categories = current.categories;
+            int[] categorySizes = current.categorySizes;
+            Gaps productGaps = current.productGaps;
+            Gaps[] categoryGaps = current.categoryGaps;
+            Overrides overrides;
+
+            if(isShared(item)) {
+                int position = indexOf(products, productCount, item);
+                int categoryPosition = indexOf(categories[ordinal], categorySizes[ordinal], item);
+                if(position < 0 || categoryPosition < 0)
+                    return false;
+
+                productGaps = productGaps.with(position);
+                categoryGaps = categoryGaps.clone();
+                categoryGaps[ordinal] = categoryGaps[ordinal].with(categoryPosition);
+                overrides = current.overrides.with(item.SERIAL_NUMBER, null);
+            } else {
+                ProductItem[] category = without(categories[ordinal], categorySizes[ordinal], item);
+                if(category == null)
+                    return false;
+
+                products = without(products, productCount--, item);
+                categories = categories.clone();
+                categorySizes = categorySizes.clone();
+                categories[ordinal] = category;
+                categorySizes[ordinal]--;
+                overrides = current.overrides.without(item.SERIAL_NUMBER);
+            }
+
+            EnumSet<ProductType> stockTypes = current.stockTypes;
+            if(categorySizes[ordinal] == categoryGaps[ordinal].size()) {
+                stockTypes = stockTypes.clone();
+                stockTypes.remove(item.TYPE);
+            }
+
+            snapshot = new Snapshot(current.version + 1, products, productCount, categories, categorySizes,
+                    stockTypes, overrides, productGaps, categoryGaps);
+            stock.remove(item);
+            searchIndex.remove(item);
+            promotions.forget(item);
+            serialIndex.remove(item);
+            priceIndex.remove(item);
+        }
+        return true;
+    }
+
+    /**
+     * Looks up a Product by its serial, e.g. from a barcode scan or a journal entry, without locking or allocating.
+     * @param serialNumber
+     * @return The Product, or null if it isn't in this Inventory.
+     */
+    public ProductItem getProduct(long serialNumber) {
+        long start = StorefrontMetrics.INVENTORY_QUERIES.start();
+        ProductItem item = lookup(serialNumber);
+        StorefrontMetrics.INVENTORY_QUERIES.stop(start);
+        return item;
+    }
+
+    private ProductItem lookup(long serialNumber) {
+        Overrides overrides = snapshot.overrides;
+        if(!overrides.isEmpty() && overrides.containsKey(serialNumber))
+            return overrides.get(serialNumber);
+
+        ProductItem item = serialIndex.get(serialNumber);
+        if(item == null && catalog != null)
+            item = catalog.getProduct(serialNumber);
+        return item;
+    }
+
+    /**
+     * Finds Products whose name or description contain every word of the query, the last word as a prefix.
+     * Name matches are ranked above description matches. Safe to call while the Inventory is being changed.
+     * @param query e.g. {@code "java cig"}
+     * @param productType Only return Products of this type, or null for any.
+     * @param limit The maximum number of results.
+     * @return The best matches, best first.
+     */
+    public List<ProductItem> search(String query, ProductType productType, int limit) {
+        long start = StorefrontMetrics.INVENTORY_SEARCHES.start();
+        List<ProductItem> results = find(query, productType, limit);
+        StorefrontMetrics.INVENTORY_SEARCHES.stop(start);
+        return results;
+    }
+
+    private List<ProductItem> find(String query, ProductType productType, int limit) {
+        Snapshot current = snapshot;
+        List<ProductItem> found = searchIndex.search(query, productType, limit);
+        if(catalog == null && current.overrides.isEmpty())
+            return found;
+
+        List<ProductItem> results = new ArrayList<>(limit);
+        resolveInto(current, found, results, limit);
+        if(catalog != null && results.size() < limit)
+            resolveInto(current, catalog.search(query, productType, limit), results, limit);
+        return results;
+    }
+
+    /**
+     * Adds this Inventory's version of each Product to the results, skipping any it has removed.
+     */
+    private static void resolveInto(Snapshot current, List<ProductItem> found, List<ProductItem> results, int limit) {
+        for(int i = 0; i < found.size() && results.size() < limit; i++) {
+            ProductItem item = current.resolve(found.get(i));
+            if(item != null)
+                results.add(item);
+        }
+    }
+
+    /**
+     * Starts tracking the quantity on hand of a Product, or sets it on the existing {@link StockLevel}
+     * so that units already in baskets stay reserved.
+     * @see StockLevel#setAvailable(int)
+     * @param item
+     * @param quantity The number of units available to sell.
+     * @return The Product's {@link StockLevel}.
+     */
+    public StockLevel setStock(ProductItem item, int quantity) {
+        ProductItem original = original(item);
+        StockLevel level = stock.get(original);
+        if(level == null) {
+            StockLevel created = new StockLevel(quantity);
+            level = stock.putIfAbsent(original, created);
+            if(level == null)
+                return created;
+        }
+        level.setAvailable(quantity);
+        return level;
+    }
+
+    /**
+     * @param item
+     * @return The {@link StockLevel} of the Product, or null if it isn't stock-tracked.
+     */
+    public StockLevel getStock(ProductItem item) {
+        return stock.get(original(item));
+    }
+
+    /**
+     * Atomically reserves units of a Product for a basket.
+     * @see StockLevel#reserve(int)
+     * @param item
+     * @param quantity
+     * @return If the units were reserved, always true for Products that aren't stock-tracked.
+     */
+    public boolean reserve(ProductItem item, int quantity) {
+        StockLevel level = stock.get(original(item));
+        return level == null ? quantity > 0 : level.reserve(quantity);
+    }
+
+    /**
+     * Returns reserved units of a Product to the shelf.
+     * @see StockLevel#release(int)
+     * @param item
+     * @param quantity
+     */
+    public void release(ProductItem item, int quantity) {
+        StockLevel level = stock.get(original(item));
+        if(level != null)
+            level.release(quantity);
+    }
+
+    /**
+     * Marks reserved units of a Product as sold.
+     * @see StockLevel#commit(int)
+     * @param item
+     * @param quantity
+     */
+    public void commit(ProductItem item, int quantity) {
+        StockLevel level = stock.get(original(item));
+        if(level != null)
+            level.commit(quantity);
+    }
+
+    /**
+     * Changes the discount of a Product, then publishes a new {@link Snapshot} version so readers can see that it was repriced.
+     * A {@link SharedCatalog} Product is not changed, this Inventory overrides it with a repriced copy instead.
+     * While a bigger {@link Promotion} is running the Product stays at that, and takes this discount once it ends.
+     * @see ProductItem#setDiscount(BigDecimal)
+     * @param item
+     * @param discount The new discount, or null to remove it.
+     * @return The success of setting the discount.
+     */
+    public boolean setDiscount(ProductItem item, BigDecimal discount) {
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            ProductItem original = original(item);
+            ProductItem override = current.resolve(original);
+            if(override == null)
+                return false;
+
+            discount = promotions.effectiveDiscount(original, discount);
+            if(override != original || isShared(original)) {
+                return override(current, original, override.getRRP(), discount);
+            }
+
+            boolean success;
+            if(discount == null) {
+                original.removeDiscount();
+                success = true;
+            } else {
+                success = original.setDiscount(discount);
+            }
+
+            snapshot = current.withOverrides(current.overrides);
+            priceIndex.put(original);
+            return success;
+        }
+    }
+
+    /**
+     * Sells a Product at a different price in this Inventory. The Product keeps its serial and stock level,
+     * but is listed, found and sold as a repriced copy from now on. Baskets keep the price they were given.
+     * @see #setDiscount(ProductItem, BigDecimal)
+     * @param item
+     * @param recommendedRetailPrice
+     * @param discount The new discount, or null for none.
+     * @return False if the Product isn't in this Inventory.
+     */
+    public boolean setPrice(ProductItem item, BigDecimal recommendedRetailPrice, BigDecimal discount) {
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            ProductItem original = original(item);
+            if(getProduct(original.SERIAL_NUMBER) == null)
+                return false;
+
+            return override(current, original, recommendedRetailPrice, promotions.effectiveDiscount(original, discount));
+        }
+    }
+
+    /**
+     * Publishes a {@link Snapshot} in which the Product is replaced by a copy with the given prices.
+     * Must hold the {@link #writeLock}.
+     */
+    private boolean override(Snapshot current, ProductItem original, BigDecimal recommendedRetailPrice, BigDecimal discount) {
+        ProductItem copy = repriced(original, recommendedRetailPrice, discount);
+        if(copy == null)
+            return false;
+
+        snapshot = current.withOverrides(current.overrides.with(original.SERIAL_NUMBER, copy));
+        priceIndex.put(copy);
+        return true;
+    }
+
+    /**
+     * Brings every Product to the discount its {@link Promotions} call for, publishing a single {@link Snapshot}.
+     * @return The number of Products repriced.
+     */
+    int reprice(Promotions promotions) {
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            Overrides overrides = current.overrides;
+            List<ProductItem> reindex = new ArrayList<>();
+            int repriced = 0;
+
+            for(ProductItem item : current.getProducts()) {
+                BigDecimal discount = promotions.effectiveDiscount(item, promotions.ownDiscount(item));
+                if(Pricing.toBasisPoints(discount == null ? BigDecimal.ZERO : discount)
+                        == Pricing.toBasisPoints(item.getPromotionalDiscount()))
+                    continue;
+
+                ProductItem original = original(item);
+                if(item != original || isShared(original)) {
+                    ProductItem copy = repriced(original, item.getRRP(), discount);
+                    if(copy == null)
+                        continue;
+                    overrides = overrides.with(original.SERIAL_NUMBER, copy);
+                    reindex.add(copy);
+                } else if(discount == null) {
+                    item.removeDiscount();
+                    reindex.add(item);
+                } else if(item.setDiscount(discount)) {
+                    reindex.add(item);
+                } else {
+                    continue;
+                }
+                repriced++;
+            }
+
+            if(repriced > 0) {
+                snapshot = current.withOverrides(overrides);
+                reindex.forEach(priceIndex::put);
+            }
+            return repriced;
+        }
+    }
+
+    /**
+     * @return A copy of the Product with the given prices, or null if the discount can't be set.
+     */
+    private static ProductItem repriced(ProductItem original, BigDecimal recommendedRetailPrice, BigDecimal discount) {
+        ProductItem copy = new ProductItem(original.SERIAL_NUMBER, original.NAME, original.DESCRIPTION,
+                original.TYPE, recommendedRetailPrice);
+        if(discount != null && !copy.setDiscount(discount))
+            return null;
+        return copy;
+    }
+
+    /**
+     * @return The Product as it was added to this Inventory or its {@link SharedCatalog}, rather than an override of it.
+     */
+    private ProductItem original(ProductItem item) {
+        ProductItem original = serialIndex.get(item.SERIAL_NUMBER);
+        if(original == null && catalog != null)
+            original = catalog.getProduct(item.SERIAL_NUMBER);
+        return original != null ? original : item;
+    }
+
+    /**
+     * @return If the Product belongs to the {@link SharedCatalog}, and so must not be changed by this Inventory.
+     */
+    private boolean isShared(ProductItem original) {
+        return catalog != null && catalog.getProduct(original.SERIAL_NUMBER) == original;
+    }
+
+    /**
+     * Writes the item into the slot after {@code size}, growing into a new array when full.
+     * Slots before {@code size} are never written again, so older snapshots sharing the array are unaffected.
+     */
+    private static ProductItem[] append(ProductItem[] array, int size, ProductItem item) {
+        if(array == null) {
+            array = new ProductItem[INITIAL_CAPACITY];
+        } else if(size == array.length) {
+            array = Arrays.copyOf(array, size + (size >> 1) + 1);
+        }
+        array[size] = item;
+        return array;
+    }
+
+    /**
+     * @return The position of {@code item} within the first {@code size} elements, or -1 if it isn't there.
+     */
+    private static int indexOf(ProductItem[] array, int size, ProductItem item) {
+        for(int i = 0; i < size; i++) {
+            if(array[i] == item)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return A fresh copy of the first {@code size} elements without {@code item}, or null if it wasn't there.
+     */
+    private static ProductItem[] without(ProductItem[] array, int size, ProductItem item) {
+        for(int i = 0; i < size; i++) {
+            if(array[i] == item) {
+                ProductItem[] copy = new ProductItem[Math.max(INITIAL_CAPACITY, array.length)];
+                System.arraycopy(array, 0, copy, 0, i);
+                System.arraycopy(array, i + 1, copy, i, size - i - 1);
+                return copy;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An immutable, versioned view of the Inventory at one point in time.
+     */
+    public static final class Snapshot {
+
+        private final long version;
+        private final ProductItem[] products;
+        /**
+         * The slots used in {@link #products}, including any {@link #productGaps}.
+         */
+        private final int productCount;
+        /**
+         * Products indexed by {@link ProductType#ordinal()}, each valid up to its {@link #categorySizes} entry.
+         */
+        private final ProductItem[][] categories;
+        private final int[] categorySizes;
+        private final EnumSet<ProductType> stockTypes;
+        /**
+         * Repriced copies by serial, listed in place of the Product in {@link #products}.
+         * A null value marks a {@link SharedCatalog} Product removed from this Inventory.
+         */
+        private final Overrides overrides;
+        /**
+         * Where removed {@link SharedCatalog} Products still sit in {@link #products} and each of the {@link #categories}.
+         */
+        private final Gaps productGaps;
+        private final Gaps[] categoryGaps;
+
+        private Snapshot(long version, ProductItem[] products, int productCount, ProductItem[][] categories,
+                         int[] categorySizes, EnumSet<ProductType> stockTypes, Overrides overrides,
+                         Gaps productGaps, Gaps[] categoryGaps) {
+            this.version = version;
+            this.products = products;
+            this.productCount = productCount;
+            this.categories = categories;
+            this.categorySizes = categorySizes;
+            this.stockTypes = stockTypes;
+            this.overrides = overrides;
+            this.productGaps = productGaps;
+            this.categoryGaps = categoryGaps;
+        }
+
+        /**
+         * @return The next version, with the same Products listed through different overrides.
+         */
+        private Snapshot withOverrides(Overrides overrides) {
+            return new Snapshot(version + 1, products, productCount, categories, categorySizes, stockTypes,
+                    overrides, productGaps, categoryGaps);
+        }
+
+        /**
+         * @return Incremented by every change to the Inventory or its Products' prices.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The number of Products in this snapshot.
+         */
+        public int size() {
+            return productCount - productGaps.size();
+        }
+
+        /**
+         * @param productType Specified filter, or null for every Product.
+         * @return The number of Products of the type in this snapshot.
+         */
+        int size(ProductType productType) {
+            if(productType == null)
+                return size();
+            int ordinal = productType.ordinal();
+            return categorySizes[ordinal] - categoryGaps[ordinal].size();
+        }
+
+        /**
+         * @see ProductType
+         * @return An EnumSet of ProductTypes represented in this Inventory, or null if it is empty.
+         */
+        public EnumSet<ProductType> getStockTypes() {
+            if(stockTypes.isEmpty())
+                return null;
+
+            return stockTypes.clone();
+        }
+
+        /**
+         * @see ProductItem
+         * @return a read-only List of every ProductItem, in the order they were added.
+         */
+        public List<ProductItem> getProducts() {
+            return list(null);
+        }
+
+        /**
+         * Get all products of a specific {@link ProductType}
+         * @see #getProducts()
+         * @param productType Specified filter.
+         * @return A read-only list of Products with the specified filter.
+         */
+        public List<ProductItem> getProducts(ProductType productType) {
+            return list(productType);
+        }
+
+        /**
+         * A page of Products by position, e.g. for a page number.
+         * @see #getPage(ProductType, String, int)
+         * @param productType Specified filter, or null for every Product.
+         * @param offset The position of the first Product on the page.
+         * @param limit The most Products on the page.
+         * @return A read-only page, empty if the offset is past the end.
+         */
+        public ProductPage getPage(ProductType productType, int offset, int limit) {
+            if(offset < 0 || limit <= 0)
+                throw new IllegalArgumentException(String.format("Bad page: offset %d, limit %d", offset, limit));
+
+            List<ProductItem> products = list(productType);
+            int size = products.size();
+            int from = Math.min(offset, size);
+            int to = (int) Math.min((long) from + limit, size);
+
+            String next = to < size ? ProductPage.cursor(productType, to, products.get(to - 1).SERIAL_NUMBER) : null;
+            return new ProductPage(products.subList(from, to), from, size, next);
+        }
+
+        /**
+         * A page of Products following the one a cursor was taken from, which may be from an older snapshot.
+         * Removing Products before the cursor does not make the next page skip any.
+         * @param productType Specified filter, or null for every Product. Must match the cursor's.
+         * @param cursor From {@link ProductPage#getNextCursor()}, or null for the first page.
+         * @param limit The most Products on the page.
+         * @return A read-only page.
+         * @throws IllegalArgumentException If the cursor is malformed or from a listing of another type.
+         */
+        public ProductPage getPage(ProductType productType, String cursor, int limit) {
+            if(cursor == null)
+                return getPage(productType, 0, limit);
+
+            long[] position = ProductPage.parseCursor(cursor, productType);
+            return getPage(productType, resume(list(productType), (int) position[0], position[1]), limit);
+        }
+
+        /**
+         * Products are only ever appended or removed, so the last Product of the previous page is at or before
+         * its old position. If it was removed itself, the old position is the best guess.
+         */
+        private static int resume(List<ProductItem> products, int offset, long lastSerial) {
+            for(int i = Math.min(offset, products.size()) - 1; i >= 0; i--) {
+                if(products.get(i).SERIAL_NUMBER == lastSerial)
+                    return i + 1;
+            }
+            return Math.min(offset, products.size());
+        }
+
+        /**
+         * A lazily evaluated Stream over this snapshot, which splits evenly for parallel use without copying.
+         * @param productType Specified filter, or null for every Product.
+         * @param parallel
+         * @return
+         */
+        public Stream<ProductItem> stream(ProductType productType, boolean parallel) {
+            ProductItem[] array = productType == null ? products : categories[productType.ordinal()];
+            Gaps gaps = productType == null ? productGaps : categoryGaps[productType.ordinal()];
+            return StreamSupport.stream(new ProductSpliterator(array, gaps, 0, size(productType), overrides), parallel);
+        }
+
+        /**
+         * @return The version of the Product listed in this snapshot, or null if it was removed.
+         */
+        ProductItem resolve(ProductItem item) {
+            if(overrides.isEmpty() || !overrides.containsKey(item.SERIAL_NUMBER))
+                return item;
+            return overrides.get(item.SERIAL_NUMBER);
+        }
+
+        private List<ProductItem> list(ProductType productType) {
+            ProductItem[] array = productType == null ? products : categories[productType.ordinal()];
+            int size = productType == null ? productCount : categorySizes[productType.ordinal()];
+            Gaps gaps = productType == null ? productGaps : categoryGaps[productType.ordinal()];
+
+            if(size == gaps.size())
+                return Collections.emptyList();
+            if(!overrides.isEmpty())
+                return new OverriddenList(array, gaps, size - gaps.size(), overrides);
+
+            return Collections.unmodifiableList(Arrays.asList(array).subList(0, size));
+        }
+    }
+
+    /**
+     * The sorted positions of removed {@link SharedCatalog} Products left in a shared array, so views can step over
+     * them without the array being copied. Never changed once published.
+     */
+    private static final class Gaps {
+
+        private static final Gaps NONE = new Gaps(new int[0]);
+
+        private final int[] positions;
+
+        private Gaps(int[] positions) {
+            this.positions = positions;
+        }
+
+        private static Gaps[] none(int length) {
+            Gaps[] gaps = new Gaps[length];
+            Arrays.fill(gaps, NONE);
+            return gaps;
+        }
+
+        private int size() {
+            return positions.length;
+        }
+
+        /**
+         * @return These gaps and one more at the position, which must not be one already.
+         */
+        private Gaps with(int position) {
+            int insert = -Arrays.binarySearch(positions, position) - 1;
+            int[] copy = new int[positions.length + 1];
+            System.arraycopy(positions, 0, copy, 0, insert);
+            copy[insert] = position;
+            System.arraycopy(positions, insert, copy, insert + 1, positions.length - insert);
+            return new Gaps(copy);
+        }
+
+        /**
+         * @return Where the Product listed at {@code index} sits in the array: past every gap at or before it.
+         */
+        private int position(int index) {
+            int low = 0, high = positions.length;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if(positions[middle] - middle <= index) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return index + low;
+        }
+    }
+
+    /**
+     * Splits a range of a snapshot's Products in halves, substituting overridden Products as they are read.
+     */
+    private static final class ProductSpliterator implements Spliterator<ProductItem> {
+
+        private final ProductItem[] array;
+        private final Gaps gaps;
+        private final Overrides overrides;
+        private int index;
+        private final int fence;
+
+        private ProductSpliterator(ProductItem[] array, Gaps gaps, int index, int fence, Overrides overrides) {
+            this.array = array;
+            this.gaps = gaps;
+            this.index = index;
+            this.fence = fence;
+            this.overrides = overrides;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ProductItem> action) {
+            if(index >= fence)
+                return false;
+
+            action.accept(get(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ProductItem> action) {
+            for(int i = index; i < fence; i++) {
+                action.accept(get(i));
+            }
+            index = fence;
+        }
+
+        @Override
+        public Spliterator<ProductItem> trySplit() {
+            int middle = (index + fence) >>> 1;
+            if(middle <= index)
+                return null;
+
+            Spliterator<ProductItem> prefix = new ProductSpliterator(array, gaps, index, middle, overrides);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+        }
+
+        private ProductItem get(int index) {
+            ProductItem item = array[gaps.size() == 0 ? index : gaps.position(index)];
+            if(overrides.isEmpty())
+                return item;
+            ProductItem override = overrides.get(item.SERIAL_NUMBER);
+            return override != null ? override : item;
+        }
+    }
+
+    /**
+     * A read-only list of Products which substitutes each overridden Product as it is read, rather than copying the array.
+     */
+    private static final class OverriddenList extends AbstractList<ProductItem> implements RandomAccess {
+
+        private final ProductItem[] array;
+        private final Gaps gaps;
+        private final int size;
+        private final Overrides overrides;
+
+        private OverriddenList(ProductItem[] array, Gaps gaps, int size, Overrides overrides) {
+            this.array = array;
+            this.gaps = gaps;
+            this.size = size;
+            this.overrides = overrides;
+        }
+
+        @Override
+        public ProductItem get(int index) {
+            if(index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+            ProductItem item = array[gaps.size() == 0 ? index : gaps.position(index)];
+            ProductItem override = overrides.get(item.SERIAL_NUMBER);
+            return override != null ? override : item;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
     }
 }
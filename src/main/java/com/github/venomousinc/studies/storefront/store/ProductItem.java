@@ -1,16 +1,14 @@
 package com.github.venomousinc.studies.storefront.store;
 
 import java.math.BigDecimal;
-import java.text.NumberFormat;
 
 public class ProductItem {
 
-    /** Represents an Integer value of 100.*/
-    private static BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
     public final String NAME;
     public final String DESCRIPTION;
     /**
-     * A Generated Serial Number, should always be 10 digits.
+     * A unique Serial Number, always 10 digits.
+     * @see SerialNumbers
      */
     public final long SERIAL_NUMBER;
 
@@ -19,15 +17,21 @@ public class ProductItem {
      */
     private final BigDecimal RRP;
 
+    /**
+     * {@link #RRP} in minor units (pence).
+     */
+    private final long rrpMinorUnits;
+
     /**
      * The {@link ProductType} which includes the tax rates.
      */
     public final ProductType TYPE;
 
     /**
-     * {@link BigDecimal} with a value related to Discount Percentage.
+     * The current discount and every price derived from it.
+     * Replaced as a whole whenever the discount changes, so readers never see a half-updated set.
      */
-    private BigDecimal promotionalDiscount = BigDecimal.ZERO;
+    private volatile Prices prices;
 
     /**
      * An item to be sold in the {@link com.github.venomousinc.studies.storefront.Storefront}
@@ -40,19 +44,31 @@ public class ProductItem {
      * @param RRP
      */
     public ProductItem(String name, String description, ProductType type, BigDecimal RRP) {
+        this(SerialNumbers.next(), name, description, type, RRP);
+    }
+
+    /**
+     * An item with a known Serial Number, e.g. one loaded from a {@link MappedCatalog}.
+     *
+     * @see SerialNumbers#reserve(long)
+     * @param serialNumber
+     * @param name
+     * @param description
+     * @param type
+     * @param RRP
+     */
+    public ProductItem(long serialNumber, String name, String description, ProductType type, BigDecimal RRP) {
+        SerialNumbers.reserve(serialNumber);
+        this.SERIAL_NUMBER = serialNumber;
         this.NAME = name;
         if(description == null)
             description = name.concat("'s at a Java Price!");
         this.DESCRIPTION = description;
         this.TYPE = type;
-        this.RRP = RRP;
-
-        long generatedSN = 5000000000l;
-        for(char c : this.NAME.toCharArray()) {
-            generatedSN += (long) c + name.length();
-        }
+        this.rrpMinorUnits = Pricing.toMinorUnits(RRP);
+        this.RRP = Pricing.toBigDecimal(rrpMinorUnits);
 
-        this.SERIAL_NUMBER = generatedSN;
+        this.prices = new Prices(BigDecimal.ZERO);
     }
 
     /**
@@ -70,7 +86,7 @@ public class ProductItem {
      * @return The {@link com.github.venomousinc.studies.storefront.Storefront} applied discount.
      */
     public BigDecimal getPromotionalDiscount() {
-        return promotionalDiscount;
+        return prices.promotionalDiscount;
     }
 
     /**
@@ -78,37 +94,53 @@ public class ProductItem {
      * @param newDiscount
      * @return
      */
-    public boolean setDiscount(BigDecimal newDiscount) {
-        promotionalDiscount = newDiscount;
+    public synchronized boolean setDiscount(BigDecimal newDiscount) {
+        prices = new Prices(newDiscount);
         return true;
     }
 
     /**
      * Set the discount of this Product to 0 (BigDecimal.ZERO)
      */
-    public void removeDiscount() {
-        promotionalDiscount = BigDecimal.ZERO;
+    public synchronized void removeDiscount() {
+        prices = new Prices(BigDecimal.ZERO);
     }
 
     /**
      * The price of this item, with the options of applying the store discount & tax.
      *
+     * @see #getPriceMinorUnits(boolean, boolean)
      * @param withDiscount
      * @param withTax
      * @return
      */
     public BigDecimal getPrice(boolean withDiscount, boolean withTax) {
-        BigDecimal newPrice = getRRP();
-
-        if(withDiscount && promotionalDiscount.compareTo(BigDecimal.ZERO) != 0) {
-            newPrice.subtract( getRRP().multiply( promotionalDiscount ).divide( ONE_HUNDRED ) );
-        }
+        return Pricing.toBigDecimal(getPriceMinorUnits(withDiscount, withTax));
+    }
 
-        if(withTax && TYPE != null && TYPE.getTaxPercentage().compareTo(BigDecimal.ZERO) != 0) {
-            newPrice = TYPE.taxedPrice(newPrice);
-        }
+    /**
+     * The price of this item in minor units (pence), with the options of applying the store discount & tax.
+     * The discount is applied first, and the tax is charged on the discounted price at the {@link TaxRegion#DEFAULT} rates.
+     *
+     * @see Pricing
+     * @param withDiscount
+     * @param withTax
+     * @return
+     */
+    public long getPriceMinorUnits(boolean withDiscount, boolean withTax) {
+        return prices.get(withDiscount, withTax);
+    }
 
-        return newPrice;
+    /**
+     * The price of this item in minor units with tax at another region's rates, see {@link TaxRegion}.
+     *
+     * @see #getPriceMinorUnits(boolean, boolean)
+     * @param withDiscount
+     * @param taxes
+     * @return
+     */
+    public long getPriceMinorUnits(boolean withDiscount, TaxTable taxes) {
+        return taxes.taxedPrice(TYPE, prices.get(withDiscount, false));
     }
 
     /**
@@ -118,7 +150,49 @@ public class ProductItem {
      * @return
      */
     public String getFormattedPrice() {
-        return NumberFormat.getCurrencyInstance().format(getPrice(true, true));
+        return prices.formatted();
+    }
+
+    /**
+     * An immutable set of this item's prices for one discount, computed up front.
+     */
+    private final class Prices {
+
+        private final BigDecimal promotionalDiscount;
+        private final long rrp, discounted, taxed, discountedTaxed;
+
+        /**
+         * {@link CurrencyFormat} output for {@link #discountedTaxed}, filled in on first use.
+         */
+        private String formatted;
+
+        private Prices(BigDecimal promotionalDiscount) {
+            this.promotionalDiscount = promotionalDiscount;
+            int discountBasisPoints = Pricing.toBasisPoints(promotionalDiscount);
+
+            this.rrp = rrpMinorUnits;
+            this.discounted = discountBasisPoints != 0 ? Pricing.withDiscount(rrp, discountBasisPoints) : rrp;
+            this.taxed = TYPE != null ? TYPE.taxedPrice(rrp) : rrp;
+            this.discountedTaxed = TYPE != null ? TYPE.taxedPrice(discounted) : discounted;
+        }
+
+        private long get(boolean withDiscount, boolean withTax) {
+            if(withDiscount)
+                return withTax ? discountedTaxed : discounted;
+            return withTax ? taxed : rrp;
+        }
+
+        /**
+         * Racing threads may each format the price, but always to the same String.
+         */
+        private String formatted() {
+            String result = formatted;
+            if(result == null) {
+                result = CurrencyFormat.getInstance().format(discountedTaxed);
+                formatted = result;
+            }
+            return result;
+        }
     }
 
 }
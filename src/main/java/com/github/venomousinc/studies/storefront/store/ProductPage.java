@@ -0,0 +1,118 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.util.List;
+
+/**
+ * One page of a Product listing, a read-only view of the {@link ProductInventory.Snapshot} it was taken from.
+ * <p>
+ * A page holds no copy of the Products, so it costs the same however large the category is.
+ * Follow {@link #getNextCursor()} to read the next page from a later snapshot: unlike an offset, a cursor
+ * neither skips nor repeats Products when earlier ones are removed in the meantime.
+ *
+ * @see ProductInventory#getPage(ProductType, String, int)
+ */
+
+public final class ProductPage {
+
+    private final List<ProductItem> items;
+    private final int offset;
+    private final int total;
+    private final String nextCursor;
+
+    ProductPage(List<ProductItem> items, int offset, int total, String nextCursor) {
+        this.items = items;
+        this.offset = offset;
+        this.total = total;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return The Products on this page, read-only.
+     */
+    public List<ProductItem> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The position of the first Product on this page in the whole listing.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The number of Products in the whole listing when the page was taken.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * @return The offset of the next page.
+     */
+    public int getNextOffset() {
+        return offset + items.size();
+    }
+
+    /**
+     * @return An opaque cursor for the next page, or null if this is the last one.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Cursors are {@code type.offset.serial} in base 36, where type is the {@link ProductType#ordinal()} plus one,
+     * or 0 for every type, and serial is that of the last Product on the page.
+     */
+    static String cursor(ProductType productType, int offset, long lastSerial) {
+        return Integer.toString(productType == null ? 0 : productType.ordinal() + 1, Character.MAX_RADIX) + '.'
+                + Integer.toString(offset, Character.MAX_RADIX) + '.'
+                + Long.toString(lastSerial, Character.MAX_RADIX);
+    }
+
+    /**
+     * A cursor for a listing by price, as {@link #cursor(ProductType, int, long)} followed by the price of the last Product.
+     */
+    static String priceCursor(ProductType productType, int offset, long lastSerial, long lastPrice) {
+        return cursor(productType, offset, lastSerial) + '.' + Long.toString(lastPrice, Character.MAX_RADIX);
+    }
+
+    /**
+     * @return The offset and serial of a cursor, as {@code {offset, serial}}.
+     * @throws IllegalArgumentException If it isn't a cursor for a listing of that type.
+     */
+    static long[] parseCursor(String cursor, ProductType productType) {
+        return parse(cursor, productType, 3);
+    }
+
+    /**
+     * @return The offset, serial and price of a cursor from {@link #priceCursor(ProductType, int, long, long)}.
+     * @throws IllegalArgumentException If it isn't a price cursor for a listing of that type.
+     */
+    static long[] parsePriceCursor(String cursor, ProductType productType) {
+        return parse(cursor, productType, 4);
+    }
+
+    private static long[] parse(String cursor, ProductType productType, int fields) {
+        String[] parts = cursor.split("\\.");
+        try {
+            if(parts.length == fields
+                    && Integer.parseInt(parts[0], Character.MAX_RADIX) == (productType == null ? 0 : productType.ordinal() + 1)) {
+                long[] values = new long[fields - 1];
+                for(int i = 1; i < fields; i++) {
+                    values[i - 1] = Long.parseLong(parts[i], Character.MAX_RADIX);
+                }
+                if(values[0] > 0 && values[0] <= Integer.MAX_VALUE)
+                    return values;
+            }
+        } catch(NumberFormatException e) {
+            // Falls through to the rejection below
+        }
+        throw new IllegalArgumentException("Not a cursor for this listing: " + cursor);
+    }
+}
@@ -49,18 +49,23 @@ public enum ProductType {
     ALCOHOLIC_BEVERAGE(VAT.ALCOHOL_RATE),
     SMOKING_PRODUCT(VAT.SMOKING_RATE);
 
-    private static BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
     /**
      * How much VAT/tax to apply.
      */
     private BigDecimal vatRate;
 
+    /**
+     * {@link #vatRate} in basis points, used by the {@link Pricing} arithmetic.
+     */
+    private final int vatBasisPoints;
+
     ProductType() {
         this(BigDecimal.ZERO);
     }
 
     ProductType(BigDecimal vatRate) {
         this.vatRate = vatRate;
+        this.vatBasisPoints = Pricing.toBasisPoints(vatRate);
     }
 
     /**
@@ -73,22 +78,49 @@ public enum ProductType {
         return vatRate;
     }
 
+    /**
+     * @see #getTaxPercentage()
+     * @return The tax rate in basis points, e.g. 2000 for 20%.
+     */
+    public int getTaxBasisPoints() {
+        return vatBasisPoints;
+    }
+
     /**
      * How much this Product costs in just VAT/tax.
+     * @see #getTaxCost(long)
      * @param itemPrice
      * @return
      */
     public BigDecimal getTaxCost(BigDecimal itemPrice) {
-        return itemPrice.multiply(vatRate).divide(ONE_HUNDRED);
+        return Pricing.toBigDecimal(getTaxCost(Pricing.toMinorUnits(itemPrice)));
+    }
+
+    /**
+     * How much this Product costs in just VAT/tax, rounded to the nearest penny.
+     * @param itemPrice The price in minor units.
+     * @return The tax in minor units.
+     */
+    public long getTaxCost(long itemPrice) {
+        return Pricing.percentageOf(itemPrice, vatBasisPoints);
     }
 
     /**
      * Using this {@link ProductType}'s {@link #vatRate}age, it returns the price with the addition of VAT/taxes.
+     * @see #taxedPrice(long)
      * @param itemPrice
      * @return
      */
     public BigDecimal taxedPrice(BigDecimal itemPrice) {
-        return itemPrice.add( getTaxCost(itemPrice) );
+        return Pricing.toBigDecimal(taxedPrice(Pricing.toMinorUnits(itemPrice)));
+    }
+
+    /**
+     * @param itemPrice The price in minor units.
+     * @return The price with VAT/taxes added, in minor units.
+     */
+    public long taxedPrice(long itemPrice) {
+        return Pricing.withTax(itemPrice, vatBasisPoints);
     }
 
     /**
@@ -99,7 +131,8 @@ public enum ProductType {
     }
 
     /**
-     * The Standardized VAT rates that the Storefront must follow.
+     * The Standardized VAT rates that the Storefront must follow, unless it prices in a configured {@link TaxRegion}.
+     * @see TaxRates
      */
     public static class VAT {
 
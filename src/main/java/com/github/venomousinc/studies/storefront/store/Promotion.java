@@ -0,0 +1,105 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.math.BigDecimal;
+
+/**
+ * A promotion rule run by an Inventory's {@link Promotions}, for every Product of one {@link ProductType} or the whole store.
+ * <p>
+ * A percentage off is item-level: it is folded into the Product's discount, so it shows in every price.
+ * A multi-buy is basket-level: it takes the cheapest qualifying units off the basket's totals.
+ *
+ * @see #percentOff(String, ProductType, BigDecimal)
+ * @see #multiBuy(String, ProductType, int, int)
+ */
+
+public final class Promotion {
+
+    public final String NAME;
+
+    /**
+     * The {@link ProductType} it applies to, or null for every Product.
+     */
+    public final ProductType TYPE;
+
+    /**
+     * The discount of a percentage off in basis points, 0 for a multi-buy.
+     */
+    private final int discountBasisPoints;
+
+    /**
+     * A multi-buy's units bought and paid for per group, 0 for a percentage off.
+     */
+    private final int buy, pay;
+
+    private Promotion(String name, ProductType type, int discountBasisPoints, int buy, int pay) {
+        this.NAME = name;
+        this.TYPE = type;
+        this.discountBasisPoints = discountBasisPoints;
+        this.buy = buy;
+        this.pay = pay;
+    }
+
+    /**
+     * e.g. {@code percentOff("Press week", ProductType.MAGAZINES_AND_NEWSPAPERS, new BigDecimal(20))}
+     * @param name Unique within an Inventory's {@link Promotions}.
+     * @param type The {@link ProductType} to discount, or null for the whole store.
+     * @param percentage e.g. 20 or 17.5
+     * @return
+     */
+    public static Promotion percentOff(String name, ProductType type, BigDecimal percentage) {
+        int basisPoints = Pricing.toBasisPoints(percentage);
+        if(basisPoints <= 0 || basisPoints > Pricing.ONE_HUNDRED_PERCENT)
+            throw new IllegalArgumentException("Discount must be above 0% and at most 100%: " + percentage);
+
+        return new Promotion(name, type, basisPoints, 0, 0);
+    }
+
+    /**
+     * e.g. {@code multiBuy("3 for 2 cakes", ProductType.CAKE, 3, 2)}
+     * @param name Unique within an Inventory's {@link Promotions}.
+     * @param type The {@link ProductType} the units must be, or null for any.
+     * @param buy The units in each group.
+     * @param pay The units paid for in each group, the cheapest of the rest are free.
+     * @return
+     */
+    public static Promotion multiBuy(String name, ProductType type, int buy, int pay) {
+        if(pay < 0 || pay >= buy)
+            throw new IllegalArgumentException(String.format("Can't buy %d for %d", buy, pay));
+
+        return new Promotion(name, type, 0, buy, pay);
+    }
+
+    /**
+     * @return If it is applied to basket totals rather than to Product prices.
+     */
+    public boolean isBasketLevel() {
+        return buy > 0;
+    }
+
+    public boolean appliesTo(ProductItem item) {
+        return TYPE == null || TYPE == item.TYPE;
+    }
+
+    /**
+     * @return The percentage off in basis points, 0 for a multi-buy.
+     */
+    public int getDiscountBasisPoints() {
+        return discountBasisPoints;
+    }
+
+    /**
+     * @param units The qualifying units in a basket.
+     * @return How many of them are free, 0 for a percentage off.
+     */
+    public int getFreeUnits(int units) {
+        return buy == 0 ? 0 : units / buy * (buy - pay);
+    }
+
+    @Override
+    public String toString() {
+        if(isBasketLevel())
+            return String.format("%s: %d for %d on %s", NAME, buy, pay, TYPE == null ? "everything" : TYPE);
+        return String.format("%s: %s%% off %s", NAME, Pricing.toBigDecimal(discountBasisPoints).toPlainString(),
+                TYPE == null ? "everything" : TYPE);
+    }
+}
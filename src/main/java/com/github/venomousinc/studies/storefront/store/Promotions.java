@@ -0,0 +1,178 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link Promotion}s running in one {@link ProductInventory}.
+ * <p>
+ * Rules are compiled whenever they change, never when a price is read: item-level rules into the best discount per
+ * {@link ProductType}, which is then written into every affected Product in a single new {@link ProductInventory.Snapshot}.
+ * Promotions don't stack, a Product is sold at its own discount or the best promotion, whichever is bigger,
+ * and goes back to its own discount once the promotion ends.
+ * <p>
+ * Basket-level rules are applied by {@link com.github.venomousinc.studies.storefront.user.User} as it totals the basket,
+ * and recomputed only when the basket or this Inventory's {@link #getVersion()} changes.
+ */
+
+public final class Promotions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( Promotions.class );
+
+    private final ProductInventory inventory;
+
+    /**
+     * Incremented by every rule change in this Inventory, so baskets holding its Products know to total again.
+     */
+    private volatile long version;
+
+    private volatile List<Promotion> promotions = Collections.emptyList();
+    private volatile List<Promotion> basketPromotions = Collections.emptyList();
+
+    /**
+     * The best item-level discount in basis points by {@link ProductType#ordinal()}.
+     */
+    private volatile int[] discounts = new int[ProductType.values().length];
+    private volatile boolean itemLevel;
+
+    /**
+     * The discount each promoted Product had of its own, by serial, restored once it is no longer promoted.
+     */
+    private final ConcurrentHashMap<Long, BigDecimal> ownDiscounts = new ConcurrentHashMap<>();
+
+    Promotions(ProductInventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * Starts a promotion, repricing the Inventory if it is item-level.
+     * @param promotion
+     * @return False if one with the same name is already running.
+     */
+    public synchronized boolean add(Promotion promotion) {
+        for(Promotion running : promotions) {
+            if(running.NAME.equals(promotion.NAME))
+                return false;
+        }
+
+        List<Promotion> next = new ArrayList<>(promotions);
+        next.add(promotion);
+        compile(next);
+        return true;
+    }
+
+    /**
+     * Ends a promotion, restoring the prices it changed.
+     * @param name
+     * @return False if none by that name is running.
+     */
+    public synchronized boolean remove(String name) {
+        List<Promotion> next = new ArrayList<>(promotions);
+        if(!next.removeIf(promotion -> promotion.NAME.equals(name)))
+            return false;
+
+        compile(next);
+        return true;
+    }
+
+    /**
+     * Ends every promotion.
+     */
+    public synchronized void clear() {
+        compile(Collections.emptyList());
+    }
+
+    /**
+     * @return Every running Promotion, in the order they were added.
+     */
+    public List<Promotion> getAll() {
+        return promotions;
+    }
+
+    /**
+     * @return The running multi-buys, in the order they were added.
+     */
+    public List<Promotion> getBasketPromotions() {
+        return basketPromotions;
+    }
+
+    /**
+     * @return Changes whenever a Promotion starts or ends in this Inventory.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private void compile(List<Promotion> next) {
+        int[] compiled = new int[ProductType.values().length];
+        List<Promotion> basket = new ArrayList<>();
+        for(Promotion promotion : next) {
+            if(promotion.isBasketLevel()) {
+                basket.add(promotion);
+            } else if(promotion.TYPE == null) {
+                for(int i = 0; i < compiled.length; i++) {
+                    compiled[i] = Math.max(compiled[i], promotion.getDiscountBasisPoints());
+                }
+            } else {
+                int ordinal = promotion.TYPE.ordinal();
+                compiled[ordinal] = Math.max(compiled[ordinal], promotion.getDiscountBasisPoints());
+            }
+        }
+
+        boolean reprice = !Arrays.equals(discounts, compiled);
+        promotions = Collections.unmodifiableList(next);
+        basketPromotions = Collections.unmodifiableList(basket);
+        discounts = compiled;
+        itemLevel = next.size() > basket.size();
+        version++;
+
+        if(reprice) {
+            int repriced = inventory.reprice(this);
+            LOGGER.info(String.format("Promotions changed, %d running, %d Products repriced", next.size(), repriced));
+        }
+    }
+
+    /**
+     * Works out the discount a Product should be sold at, and remembers its own while a promotion beats it.
+     * Called by the Inventory whenever a Product is added or its discount set.
+     * @param item
+     * @param own The Product's own discount, or null for none.
+     * @return The discount to set, {@code own} if no promotion beats it.
+     */
+    BigDecimal effectiveDiscount(ProductItem item, BigDecimal own) {
+        int promoted = discounts[item.TYPE.ordinal()];
+        if(promoted == 0 || promoted <= Pricing.toBasisPoints(own == null ? BigDecimal.ZERO : own)) {
+            ownDiscounts.remove(item.SERIAL_NUMBER);
+            return own;
+        }
+
+        ownDiscounts.put(item.SERIAL_NUMBER, own == null ? BigDecimal.ZERO : own);
+        return Pricing.toBigDecimal(promoted);
+    }
+
+    /**
+     * @return The Product's own discount, whether or not it is currently promoted.
+     */
+    BigDecimal ownDiscount(ProductItem item) {
+        BigDecimal own = ownDiscounts.get(item.SERIAL_NUMBER);
+        return own != null ? own : item.getPromotionalDiscount();
+    }
+
+    /**
+     * @return If any percentage off is running, so new Products may need discounting.
+     */
+    boolean hasItemPromotions() {
+        return itemLevel;
+    }
+
+    void forget(ProductItem item) {
+        ownDiscounts.remove(item.SERIAL_NUMBER);
+    }
+}
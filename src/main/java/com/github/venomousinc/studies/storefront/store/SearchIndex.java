@@ -0,0 +1,431 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An inverted index over {@link ProductItem#NAME} and {@link ProductItem#DESCRIPTION}, maintained by the {@link ProductInventory}.
+ * <p>
+ * Text is split into lower-case runs of letters and digits. Every token of a query must match, the last one as a prefix
+ * so results can be shown while the shopper is still typing. Matches in the name rank above matches in the description.
+ * <p>
+ * Writers must be serialized by the caller. Readers never lock: documents and postings are only ever appended,
+ * and each is published by a volatile write after its contents are in place.
+ *
+ * @see ProductInventory#search(String, ProductType, int)
+ */
+
+class SearchIndex {
+
+    private static final int NAME_SCORE = 2;
+    private static final int DESCRIPTION_SCORE = 1;
+
+    /**
+     * Postings by token, sorted so a prefix is a contiguous range.
+     */
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+
+    /**
+     * Indexed Products by document id, null once removed.
+     */
+    private volatile ProductItem[] documents = new ProductItem[16];
+    private volatile int documentCount;
+
+    /**
+     * Document ids by Product, only touched by writers.
+     */
+    private final HashMap<ProductItem, Integer> documentIds = new HashMap<>();
+
+    void add(ProductItem item) {
+        if(documentIds.containsKey(item))
+            return;
+
+        int id = documentCount;
+        ProductItem[] array = documents;
+        if(id == array.length) {
+            array = Arrays.copyOf(array, id * 2);
+            documents = array;
+        }
+        array[id] = item;
+        documentIds.put(item, id);
+
+        LinkedHashMap<String, Boolean> tokens = new LinkedHashMap<>();
+        for(String token : tokenize(item.NAME)) {
+            tokens.put(token, Boolean.TRUE);
+        }
+        for(String token : tokenize(item.DESCRIPTION)) {
+            tokens.putIfAbsent(token, Boolean.FALSE);
+        }
+        for(Map.Entry<String, Boolean> token : tokens.entrySet()) {
+            terms.computeIfAbsent(token.getKey(), key -> new Postings()).append(id, token.getValue());
+        }
+
+        documentCount = id + 1;
+    }
+
+    /**
+     * Hides the Product from results. Its postings stay behind and are skipped when read.
+     */
+    void remove(ProductItem item) {
+        Integer id = documentIds.remove(item);
+        if(id != null) {
+            ProductItem[] array = documents;
+            array[id] = null;
+            documents = array;
+        }
+    }
+
+    /**
+     * @param query Free text, the last token is matched as a prefix.
+     * @param type Only return Products of this type, or null for any.
+     * @param limit The maximum number of results.
+     * @return The best matches, best first.
+     */
+    List<ProductItem> search(String query, ProductType type, int limit) {
+        List<String> tokens = tokenize(query);
+        if(tokens.isEmpty() || limit <= 0)
+            return Collections.emptyList();
+
+        String prefix = tokens.get(tokens.size() - 1);
+        HashSet<String> exact = new HashSet<>(tokens.subList(0, tokens.size() - 1));
+        exact.remove(prefix);
+
+        ProductItem[] array = documents;
+        return exact.isEmpty()
+                ? searchPrefix(array, prefix, type, limit)
+                : searchAll(array, exact, prefix, type, limit);
+    }
+
+    /**
+     * A single prefix: name matches first, then description matches, stopping as soon as there are enough.
+     */
+    private List<ProductItem> searchPrefix(ProductItem[] array, String prefix, ProductType type, int limit) {
+        NavigableMap<String, Postings> range = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        List<ProductItem> results = new ArrayList<>(Math.min(limit, 64));
+        HashSet<ProductItem> seen = new HashSet<>();
+
+        for(boolean inName : new boolean[] { true, false }) {
+            for(Postings postings : range.values()) {
+                int[] entries = postings.entries;
+                int size = Math.min(postings.size, entries.length);
+                for(int i = 0; i < size; i++) {
+                    if(Postings.inName(entries[i]) != inName)
+                        continue;
+
+                    ProductItem item = document(array, Postings.document(entries[i]));
+                    if(item != null && (type == null || item.TYPE == type) && seen.add(item)) {
+                        results.add(item);
+                        if(results.size() == limit)
+                            return results;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Several tokens: walk whichever is shorter, the rarest exact token's postings or every posting under the prefix,
+     * in document order, and probe the remaining tokens for each document found. As ties go to the earlier document,
+     * the walk stops once {@code limit} documents have matched every token in their name.
+     */
+    private List<ProductItem> searchAll(ProductItem[] array, HashSet<String> exact, String prefix, ProductType type, int limit) {
+        List<Postings> lists = new ArrayList<>(exact.size());
+        for(String token : exact) {
+            Postings postings = terms.get(token);
+            if(postings == null)
+                return Collections.emptyList();
+            lists.add(postings);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        NavigableMap<String, Postings> range = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        long prefixPostings = 0;
+        for(Postings postings : range.values()) {
+            prefixPostings += postings.size;
+            if(prefixPostings >= lists.get(0).size)
+                break;
+        }
+
+        boolean drivenByPrefix = prefixPostings < lists.get(0).size;
+        DocumentStream driver = drivenByPrefix ? new MergedStream(range.values()) : new MergedStream(lists.subList(0, 1));
+        int probeFrom = drivenByPrefix ? 0 : 1;
+        int[] cursors = new int[lists.size()];
+
+        int bestScore = NAME_SCORE * (lists.size() + 1);
+        int bestFound = 0;
+        PriorityQueue<ScoredItem> best = new PriorityQueue<>();
+
+        candidates:
+        for(int entry = driver.next(); entry >= 0 && bestFound < limit; entry = driver.next()) {
+            int document = Postings.document(entry);
+            ProductItem item = document(array, document);
+            if(item == null || (type != null && item.TYPE != type))
+                continue;
+
+            int score = Postings.inName(entry) ? NAME_SCORE : DESCRIPTION_SCORE;
+            for(int l = probeFrom; l < lists.size(); l++) {
+                int found = lists.get(l).seek(document, cursors, l);
+                if(found < 0)
+                    continue candidates;
+                score += Postings.inName(found) ? NAME_SCORE : DESCRIPTION_SCORE;
+            }
+
+            if(!drivenByPrefix) {
+                int prefixScore = prefixScore(item, prefix);
+                if(prefixScore == 0)
+                    continue;
+                score += prefixScore;
+            }
+
+            if(score == bestScore)
+                bestFound++;
+            offer(best, new ScoredItem(item, document, score), limit);
+        }
+        return ranked(best);
+    }
+
+    private static void offer(PriorityQueue<ScoredItem> best, ScoredItem item, int limit) {
+        best.add(item);
+        if(best.size() > limit)
+            best.poll();
+    }
+
+    private static List<ProductItem> ranked(PriorityQueue<ScoredItem> best) {
+        ScoredItem[] ranked = best.toArray(new ScoredItem[0]);
+        Arrays.sort(ranked, Collections.reverseOrder());
+        List<ProductItem> results = new ArrayList<>(ranked.length);
+        for(ScoredItem scored : ranked) {
+            results.add(scored.item);
+        }
+        return results;
+    }
+
+    /**
+     * @return The Product, or null if it was removed or added after the query started.
+     */
+    private static ProductItem document(ProductItem[] array, int document) {
+        return document < array.length ? array[document] : null;
+    }
+
+    private static int prefixScore(ProductItem item, String prefix) {
+        if(hasTokenStartingWith(item.NAME, prefix))
+            return NAME_SCORE;
+        if(hasTokenStartingWith(item.DESCRIPTION, prefix))
+            return DESCRIPTION_SCORE;
+        return 0;
+    }
+
+    /**
+     * The same as checking every {@link #tokenize(String)} token with {@link String#startsWith(String)}, without the garbage.
+     */
+    private static boolean hasTokenStartingWith(String text, String prefix) {
+        if(text == null)
+            return false;
+
+        int length = text.length();
+        for(int start = 0; start < length; start++) {
+            if(!Character.isLetterOrDigit(text.charAt(start)))
+                continue;
+
+            int matched = 0;
+            while(matched < prefix.length() && start + matched < length
+                    && Character.toLowerCase(text.charAt(start + matched)) == prefix.charAt(matched)) {
+                matched++;
+            }
+            if(matched == prefix.length())
+                return true;
+
+            while(start < length && Character.isLetterOrDigit(text.charAt(start))) {
+                start++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits text into lower-case runs of letters and digits.
+     * @param text
+     * @return
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if(text == null)
+            return tokens;
+
+        StringBuilder token = new StringBuilder();
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if(token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if(token.length() > 0)
+            tokens.add(token.toString());
+        return tokens;
+    }
+
+    /**
+     * The documents containing one token, in ascending id order.
+     * Each entry is {@code (document << 1) | inName}.
+     */
+    private static final class Postings {
+        private volatile int[] entries = new int[4];
+        private volatile int size;
+
+        private void append(int document, boolean inName) {
+            int[] array = entries;
+            if(size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+                entries = array;
+            }
+            array[size] = (document << 1) | (inName ? 1 : 0);
+            size = size + 1;
+        }
+
+        /**
+         * Finds the document's entry, searching forward from {@code cursors[cursor]}, which is moved past
+         * every smaller document. Successive calls must therefore ask for ascending documents.
+         * @return The entry for the document, or -1 if it doesn't contain this token.
+         */
+        private int seek(int document, int[] cursors, int cursor) {
+            int[] array = entries;
+            int size = Math.min(this.size, array.length);
+            int low = cursors[cursor];
+
+            int bound = 1;
+            while(low + bound - 1 < size && document(array[low + bound - 1]) < document) {
+                bound <<= 1;
+            }
+            int high = Math.min(low + bound - 1, size - 1);
+            low += bound >> 1;
+
+            while(low <= high) {
+                int middle = (low + high) >>> 1;
+                int found = document(array[middle]);
+                if(found < document) {
+                    low = middle + 1;
+                } else if(found > document) {
+                    high = middle - 1;
+                } else {
+                    cursors[cursor] = middle + 1;
+                    return array[middle];
+                }
+            }
+            cursors[cursor] = low;
+            return -1;
+        }
+
+        private static int document(int entry) {
+            return entry >>> 1;
+        }
+
+        private static boolean inName(int entry) {
+            return (entry & 1) != 0;
+        }
+    }
+
+    /**
+     * Postings entries in ascending document order.
+     */
+    private interface DocumentStream {
+        /**
+         * @return The next entry, or -1 at the end.
+         */
+        int next();
+    }
+
+    /**
+     * Merges several {@link Postings} into one {@link DocumentStream}, a document in more
+     * than one of them comes out once, flagged in the name if any of them say so.
+     */
+    private static final class MergedStream implements DocumentStream {
+        private final PriorityQueue<Cursor> heads = new PriorityQueue<>();
+
+        private MergedStream(Iterable<Postings> lists) {
+            for(Postings postings : lists) {
+                int[] array = postings.entries;
+                int size = Math.min(postings.size, array.length);
+                if(size > 0)
+                    heads.add(new Cursor(array, size));
+            }
+        }
+
+        @Override
+        public int next() {
+            if(heads.isEmpty())
+                return -1;
+
+            int entry = advance();
+            while(!heads.isEmpty() && Postings.document(heads.peek().current()) == Postings.document(entry)) {
+                entry = Math.max(entry, advance());
+            }
+            return entry;
+        }
+
+        private int advance() {
+            Cursor cursor = heads.poll();
+            int entry = cursor.current();
+            if(++cursor.position < cursor.size)
+                heads.add(cursor);
+            return entry;
+        }
+
+        /**
+         * A position in one {@link Postings}, reading no further than its size when the stream was created.
+         */
+        private static final class Cursor implements Comparable<Cursor> {
+            private final int[] entries;
+            private final int size;
+            private int position;
+
+            private Cursor(int[] entries, int size) {
+                this.entries = entries;
+                this.size = size;
+            }
+
+            private int current() {
+                return entries[position];
+            }
+
+            @Override
+            public int compareTo(Cursor other) {
+                return Integer.compare(current(), other.current());
+            }
+        }
+    }
+
+    private static final class ScoredItem implements Comparable<ScoredItem> {
+        private final ProductItem item;
+        private final int document;
+        private final int score;
+
+        private ScoredItem(ProductItem item, int document, int score) {
+            this.item = item;
+            this.document = document;
+            this.score = score;
+        }
+
+        /**
+         * Higher scores first, then the earlier document.
+         */
+        @Override
+        public int compareTo(ScoredItem other) {
+            if(score != other.score)
+                return Integer.compare(score, other.score);
+            return Integer.compare(other.document, document);
+        }
+    }
+}
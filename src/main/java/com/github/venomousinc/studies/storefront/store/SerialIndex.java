@@ -0,0 +1,132 @@
+package com.github.venomousinc.studies.storefront.store;
+
+/**
+ * An open-addressing map from {@link ProductItem#SERIAL_NUMBER} to {@link ProductItem}, without boxing the keys.
+ * <p>
+ * Writers must be serialized by the caller. Readers never lock: each write is published by re-assigning
+ * the volatile {@link #table}, and a reader racing an insert simply doesn't find the new entry yet.
+ * Removed entries keep their key with a null value until the next resize.
+ *
+ * @see ProductInventory#getProduct(long)
+ */
+
+class SerialIndex {
+
+    /** Marks an unused slot, never a valid serial. */
+    private static final long EMPTY = 0L;
+
+    private volatile Table table = new Table(64);
+
+    /**
+     * @param serial
+     * @return The Product with this serial, or null.
+     */
+    ProductItem get(long serial) {
+        Table current = table;
+        long[] keys = current.keys;
+        int mask = keys.length - 1;
+
+        for(int i = slot(serial, mask); ; i = (i + 1) & mask) {
+            long key = keys[i];
+            if(key == serial)
+                return current.values[i];
+            if(key == EMPTY)
+                return null;
+        }
+    }
+
+    /**
+     * @param item
+     * @return False if another Product already has this serial.
+     */
+    boolean put(ProductItem item) {
+        Table current = table;
+        if((current.used + 1) * 4 > current.keys.length * 3) {
+            current = current.resize();
+        }
+
+        long[] keys = current.keys;
+        int mask = keys.length - 1;
+        int i = slot(item.SERIAL_NUMBER, mask);
+        while(keys[i] != EMPTY && keys[i] != item.SERIAL_NUMBER) {
+            i = (i + 1) & mask;
+        }
+
+        if(keys[i] == EMPTY) {
+            current.used++;
+        } else if(current.values[i] != null) {
+            table = current;
+            return current.values[i] == item;
+        }
+
+        current.values[i] = item;
+        keys[i] = item.SERIAL_NUMBER;
+        table = current;
+        return true;
+    }
+
+    void remove(ProductItem item) {
+        Table current = table;
+        long[] keys = current.keys;
+        int mask = keys.length - 1;
+
+        for(int i = slot(item.SERIAL_NUMBER, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if(keys[i] == item.SERIAL_NUMBER) {
+                if(current.values[i] == item) {
+                    current.values[i] = null;
+                    table = current;
+                }
+                return;
+            }
+        }
+    }
+
+    private static int slot(long serial, int mask) {
+        long hash = serial * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final ProductItem[] values;
+        /** Slots holding a key, including removed entries. */
+        private int used;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new ProductItem[capacity];
+        }
+
+        /**
+         * @return A new table holding the live entries, with room to grow.
+         */
+        private Table resize() {
+            int live = 0;
+            for(ProductItem value : values) {
+                if(value != null)
+                    live++;
+            }
+
+            int capacity = keys.length;
+            while((live + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+
+            Table resized = new Table(capacity);
+            int mask = capacity - 1;
+            for(ProductItem value : values) {
+                if(value == null)
+                    continue;
+
+                int i = slot(value.SERIAL_NUMBER, mask);
+                while(resized.keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                resized.keys[i] = value.SERIAL_NUMBER;
+                resized.values[i] = value;
+                resized.used++;
+            }
+            return resized;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out {@link ProductItem#SERIAL_NUMBER}s, each one used only once per process.
+ * <p>
+ * Serials are 10 digits, from {@link #FIRST} to {@link #LAST}. Serials loaded from elsewhere, such as a
+ * {@link MappedCatalog}, are passed to {@link #reserve(long)} so that {@link #next()} never issues them again.
+ */
+
+public final class SerialNumbers {
+
+    public static final long FIRST = 5000000000L;
+    public static final long LAST = 9999999999L;
+
+    /**
+     * The highest serial issued or reserved so far.
+     */
+    private static final AtomicLong LATEST = new AtomicLong(FIRST - 1);
+
+    private SerialNumbers() {
+    }
+
+    /**
+     * @return A serial that has not been issued or reserved before.
+     * @throws IllegalStateException If every 10 digit serial has been used.
+     */
+    public static long next() {
+        long serial = LATEST.incrementAndGet();
+        if(serial > LAST)
+            throw new IllegalStateException("Serial numbers exhausted");
+        return serial;
+    }
+
+    /**
+     * Marks an existing serial as used.
+     * @param serial
+     * @throws IllegalArgumentException If the serial isn't 10 digits.
+     */
+    public static void reserve(long serial) {
+        if(!isValid(serial))
+            throw new IllegalArgumentException("Serial number must be between " + FIRST + " and " + LAST + ": " + serial);
+
+        LATEST.accumulateAndGet(serial, Math::max);
+    }
+
+    public static boolean isValid(long serial) {
+        return serial >= FIRST && serial <= LAST;
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * An immutable set of {@link ProductItem}s that many {@link ProductInventory}s are built on.
+ * <p>
+ * Stores created with {@link ProductInventory#ProductInventory(com.github.venomousinc.studies.storefront.Storefront, SharedCatalog)}
+ * share this catalog's arrays and indexes, and only hold what they change themselves: repriced Products, removed Products,
+ * Products of their own and stock levels. The catalog's ProductItems must not be changed once it is built,
+ * use {@link ProductInventory#setDiscount(ProductItem, java.math.BigDecimal)} or
+ * {@link ProductInventory#setPrice(ProductItem, java.math.BigDecimal, java.math.BigDecimal)} on the store instead.
+ */
+
+public final class SharedCatalog {
+
+    private static final ProductType[] TYPES = ProductType.values();
+
+    /**
+     * Exactly {@link #size()} long, so a store appending its own Products always copies rather than writing into them.
+     */
+    final ProductItem[] products;
+    /**
+     * Products indexed by {@link ProductType#ordinal()}, each exactly its {@link #categorySizes} entry long.
+     */
+    final ProductItem[][] categories;
+    final int[] categorySizes;
+    final EnumSet<ProductType> stockTypes;
+    /**
+     * Each category sorted by price, and those prices, shared by every store's {@link PriceIndex}.
+     */
+    final ProductItem[][] byPrice;
+    final long[][] prices;
+
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final SerialIndex serialIndex = new SerialIndex();
+
+    private SharedCatalog(Collection<ProductItem> items) {
+        List<ProductItem> accepted = new ArrayList<>(items.size());
+        int[] sizes = new int[TYPES.length];
+
+        for(ProductItem item : items) {
+            if(item == null || item.TYPE == null || serialIndex.get(item.SERIAL_NUMBER) != null)
+                continue;
+            serialIndex.put(item);
+            accepted.add(item);
+            sizes[item.TYPE.ordinal()]++;
+        }
+
+        this.products = accepted.toArray(new ProductItem[0]);
+        this.categories = new ProductItem[TYPES.length][];
+        this.categorySizes = new int[TYPES.length];
+        this.stockTypes = EnumSet.noneOf(ProductType.class);
+
+        for(int i = 0; i < TYPES.length; i++) {
+            if(sizes[i] > 0)
+                categories[i] = new ProductItem[sizes[i]];
+        }
+        for(ProductItem item : products) {
+            int ordinal = item.TYPE.ordinal();
+            categories[ordinal][categorySizes[ordinal]++] = item;
+            stockTypes.add(item.TYPE);
+            searchIndex.add(item);
+        }
+        this.byPrice = PriceIndex.sort(categories, categorySizes);
+        this.prices = PriceIndex.prices(byPrice);
+    }
+
+    /**
+     * @param items Any without a {@link ProductType}, or sharing a serial with an earlier item, are skipped.
+     * @return A catalog of the items, in the order given.
+     */
+    public static SharedCatalog of(Collection<ProductItem> items) {
+        return new SharedCatalog(items);
+    }
+
+    /**
+     * Creates every Product in a {@link MappedCatalog}, with its discount. Stock levels are left to each store.
+     * @param catalog
+     * @return
+     */
+    public static SharedCatalog of(MappedCatalog catalog) {
+        List<ProductItem> items = new ArrayList<>(catalog.size());
+        for(int i = 0; i < catalog.size(); i++) {
+            items.add(catalog.getProduct(i));
+        }
+        return new SharedCatalog(items);
+    }
+
+    /**
+     * @return The number of Products in the catalog.
+     */
+    public int size() {
+        return products.length;
+    }
+
+    /**
+     * @return a read-only List of every ProductItem in the catalog.
+     */
+    public List<ProductItem> getProducts() {
+        return Collections.unmodifiableList(Arrays.asList(products));
+    }
+
+    /**
+     * @param serialNumber
+     * @return The catalog's Product with this serial, or null.
+     */
+    public ProductItem getProduct(long serialNumber) {
+        return serialIndex.get(serialNumber);
+    }
+
+    /**
+     * @see ProductInventory#search(String, ProductType, int)
+     */
+    List<ProductItem> search(String query, ProductType productType, int limit) {
+        return searchIndex.search(query, productType, limit);
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The quantity on hand of a single {@link ProductItem}, shared by every shopper.
+ * <p>
+ * Units move from {@link #available} to {@link #reserved} when they go into a basket, and leave
+ * {@link #reserved} when the basket is checked out or released. All changes are lock-free compare-and-set
+ * loops, so shoppers contending on the same Product never block one another.
+ *
+ * @see ProductInventory#reserve(ProductItem, int)
+ */
+
+public class StockLevel {
+
+    /**
+     * Units that can still be put into a basket.
+     */
+    private final AtomicInteger available;
+
+    /**
+     * Units sitting in baskets, waiting for checkout.
+     */
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    public StockLevel(int available) {
+        if(available < 0)
+            throw new IllegalArgumentException("Stock cannot be negative: " + available);
+
+        this.available = new AtomicInteger(available);
+    }
+
+    public int getAvailable() {
+        return available.get();
+    }
+
+    public int getReserved() {
+        return reserved.get();
+    }
+
+    /**
+     * Takes units out of {@link #available} only if there are enough of them.
+     * @param quantity Must be positive.
+     * @return If the units were reserved.
+     */
+    public boolean reserve(int quantity) {
+        if(quantity <= 0)
+            return false;
+
+        int current;
+        do {
+            current = available.get();
+            if(current < quantity)
+                return false;
+        } while(!available.compareAndSet(current, current - quantity));
+
+        reserved.addAndGet(quantity);
+        return true;
+    }
+
+    /**
+     * Returns reserved units to {@link #available}, e.g. when a basket is cleared.
+     * @param quantity
+     */
+    public void release(int quantity) {
+        if(quantity <= 0)
+            return;
+
+        reserved.addAndGet(-quantity);
+        available.addAndGet(quantity);
+    }
+
+    /**
+     * Marks reserved units as sold, they leave the store for good.
+     * @param quantity
+     */
+    public void commit(int quantity) {
+        if(quantity <= 0)
+            return;
+
+        reserved.addAndGet(-quantity);
+    }
+
+    /**
+     * Sets the units that can still be put into a basket, e.g. after a stock count, leaving those in baskets reserved.
+     * @param quantity
+     * @return The units that were available before.
+     */
+    public int setAvailable(int quantity) {
+        if(quantity < 0)
+            throw new IllegalArgumentException("Stock cannot be negative: " + quantity);
+
+        int current;
+        do {
+            current = available.get();
+        } while(!available.compareAndSet(current, quantity));
+        return current;
+    }
+
+    /**
+     * Adds newly delivered units to {@link #available}.
+     * @param quantity
+     */
+    public void restock(int quantity) {
+        if(quantity <= 0)
+            return;
+
+        available.addAndGet(quantity);
+    }
+}
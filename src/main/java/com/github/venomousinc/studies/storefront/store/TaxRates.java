@@ -0,0 +1,224 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VAT/tax rates per region and effective date, loaded from a config file and compiled into {@link TaxTable}s.
+ * <p>
+ * Each line of the file is {@code region effective-date type rate}, separated by whitespace, e.g.
+ * <pre>
+ * # region  effective   type            rate
+ * UK        2024-01-01  SUGAR_BEVERAGE  22
+ * IE        2024-01-01  *               23
+ * IE        2024-01-01  CAKE            0
+ * </pre>
+ * The type is a {@link ProductType#name()}, or {@code *} for every type not given its own rate on that date.
+ * A region's first table starts from the rates built into {@link ProductType}, and each later one from the table
+ * before it, so a change of rates only lists the types that changed. Blank lines and lines starting with {@code #} are skipped.
+ * <p>
+ * {@link TaxRegion}s handed out stay valid across {@link #reload(Path)}s and {@link #update(LocalDate)}s,
+ * which swap each one's table atomically.
+ */
+
+public final class TaxRates {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( TaxRates.class );
+
+    public static final String EVERY_TYPE = "*";
+
+    /**
+     * Every region's tables, earliest first. Replaced as a whole by {@link #reload(Path)}.
+     */
+    private volatile Map<String, List<TaxTable>> schedule = Collections.emptyMap();
+
+    private final ConcurrentHashMap<String, TaxRegion> regions = new ConcurrentHashMap<>();
+
+    /**
+     * @param path
+     * @return The rates, with every region on today's table.
+     * @throws IOException If the file can't be read or has a malformed line.
+     */
+    public static TaxRates load(Path path) throws IOException {
+        TaxRates rates = new TaxRates();
+        rates.reload(path);
+        return rates;
+    }
+
+    /**
+     * Replaces every region's schedule with the file's, then moves each region to today's table.
+     * A file that can't be read or parsed leaves the current rates in place.
+     * @param path
+     * @throws IOException If the file can't be read or has a malformed line.
+     */
+    public synchronized void reload(Path path) throws IOException {
+        schedule = parse(path);
+        update(LocalDate.now());
+    }
+
+    /**
+     * @param name
+     * @return The region, or null if the config has no rates for it.
+     */
+    public TaxRegion getRegion(String name) {
+        TaxRegion region = regions.get(name);
+        if(region != null)
+            return region;
+
+        TaxTable table = getTable(name, LocalDate.now());
+        if(table == null)
+            return null;
+        return regions.computeIfAbsent(name, n -> new TaxRegion(n, table));
+    }
+
+    /**
+     * @return The regions the config has rates for.
+     */
+    public Set<String> getRegionNames() {
+        return Collections.unmodifiableSet(schedule.keySet());
+    }
+
+    /**
+     * @param region
+     * @param date
+     * @return The table in force in the region on that date, or null if the config has no rates for it.
+     */
+    public TaxTable getTable(String region, LocalDate date) {
+        List<TaxTable> tables = schedule.get(region);
+        if(tables == null)
+            return null;
+
+        TaxTable inForce = null;
+        for(TaxTable table : tables) {
+            if(table.EFFECTIVE.isAfter(date))
+                break;
+            inForce = table;
+        }
+        return inForce != null ? inForce : TaxTable.builtIn(region);
+    }
+
+    /**
+     * Moves every region handed out to the table in force on the date. Call it at least daily,
+     * see {@link #scheduleUpdates(ScheduledExecutorService)}.
+     * @param date
+     * @return The number of regions whose table changed.
+     */
+    public synchronized int update(LocalDate date) {
+        int changed = 0;
+        for(TaxRegion region : regions.values()) {
+            TaxTable table = getTable(region.NAME, date);
+            if(table == null) {
+                LOGGER.warn(String.format("Tax region %s is no longer configured, keeping %s", region.NAME, region.getTable()));
+            } else if(!table.sameRates(region.getTable()) || !table.EFFECTIVE.equals(region.getTable().EFFECTIVE)) {
+                region.setTable(table);
+                changed++;
+                LOGGER.info(String.format("Tax region %s now on rates %s", region.NAME, table));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Runs {@link #update(LocalDate)} every hour, so new rates come in within an hour of their effective date.
+     * @param executor
+     * @return Cancel it to stop updating.
+     */
+    public ScheduledFuture<?> scheduleUpdates(ScheduledExecutorService executor) {
+        return executor.scheduleAtFixedRate(() -> update(LocalDate.now()), 1, 60, TimeUnit.MINUTES);
+    }
+
+    private static Map<String, List<TaxTable>> parse(Path path) throws IOException {
+        ProductType[] types = ProductType.values();
+        /* Rates given per region and date, by ordinal, with EVERY_TYPE in the last slot and -1 for none given. */
+        Map<String, TreeMap<LocalDate, int[]>> given = new HashMap<>();
+
+        try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] fields = line.split("\\s+");
+                if(fields.length != 4)
+                    throw malformed(path, lineNumber, "expected region, effective date, type and rate");
+
+                LocalDate effective;
+                int basisPoints;
+                try {
+                    effective = LocalDate.parse(fields[1]);
+                    basisPoints = Pricing.toBasisPoints(new BigDecimal(fields[3]));
+                } catch(DateTimeParseException | ArithmeticException | NumberFormatException e) {
+                    throw malformed(path, lineNumber, e.getMessage());
+                }
+                if(basisPoints < 0 || basisPoints > Pricing.ONE_HUNDRED_PERCENT)
+                    throw malformed(path, lineNumber, "rate must be between 0 and 100");
+
+                int slot;
+                if(fields[2].equals(EVERY_TYPE)) {
+                    slot = types.length;
+                } else {
+                    try {
+                        slot = ProductType.valueOf(fields[2]).ordinal();
+                    } catch(IllegalArgumentException e) {
+                        throw malformed(path, lineNumber, "unknown type " + fields[2]);
+                    }
+                }
+
+                int[] rates = given.computeIfAbsent(fields[0], region -> new TreeMap<>()).computeIfAbsent(effective, date -> {
+                    int[] unset = new int[types.length + 1];
+                    Arrays.fill(unset, -1);
+                    return unset;
+                });
+                rates[slot] = basisPoints;
+            }
+        }
+
+        Map<String, List<TaxTable>> schedule = new HashMap<>();
+        for(Map.Entry<String, TreeMap<LocalDate, int[]>> region : given.entrySet()) {
+            List<TaxTable> tables = new ArrayList<>();
+            TaxTable previous = TaxTable.builtIn(region.getKey());
+            for(Map.Entry<LocalDate, int[]> change : region.getValue().entrySet()) {
+                int[] rates = change.getValue();
+                int[] basisPoints = rates[types.length] >= 0 ? new int[types.length] : previous.copyBasisPoints();
+                for(int i = 0; i < types.length; i++) {
+                    if(rates[i] >= 0)
+                        basisPoints[i] = rates[i];
+                    else if(rates[types.length] >= 0)
+                        basisPoints[i] = rates[types.length];
+                }
+                previous = new TaxTable(region.getKey(), change.getKey(), basisPoints);
+                tables.add(previous);
+            }
+            schedule.put(region.getKey(), Collections.unmodifiableList(tables));
+        }
+        LOGGER.info(String.format("Loaded tax rates for %d regions from %s", schedule.size(), path));
+        return schedule;
+    }
+
+    private static IOException malformed(Path path, int lineNumber, String message) {
+        return new IOException(String.format("%s:%d: %s", path, lineNumber, message));
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.venomousinc.studies.storefront.store;
+
+/**
+ * A tax region a {@link com.github.venomousinc.studies.storefront.Storefront} prices in, holding the {@link TaxTable}
+ * in force there right now.
+ * <p>
+ * Storefronts keep the TaxRegion, not the table, so when {@link TaxRates} swaps in new rates every Storefront in
+ * the region picks them up on its next price, with a single volatile read.
+ */
+
+public final class TaxRegion {
+
+    /**
+     * Prices with the rates built into {@link ProductType}, the same ones {@link ProductItem} prices with.
+     */
+    public static final TaxRegion DEFAULT = new TaxRegion("DEFAULT", TaxTable.builtIn("DEFAULT"));
+
+    public final String NAME;
+
+    private volatile TaxTable table;
+
+    TaxRegion(String name, TaxTable table) {
+        this.NAME = name;
+        this.table = table;
+    }
+
+    /**
+     * @return The rates in force, read once per basket line or listing rather than per ProductType.
+     */
+    public TaxTable getTable() {
+        return table;
+    }
+
+    void setTable(TaxTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public String toString() {
+        return NAME;
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The VAT/tax rate of every {@link ProductType} in one region from one date, compiled into basis points
+ * indexed by {@link ProductType#ordinal()}, so taxing a price is an array read and a multiply.
+ * <p>
+ * Immutable, a change of rates is a new TaxTable swapped into its {@link TaxRegion}.
+ *
+ * @see TaxRates
+ */
+
+public final class TaxTable {
+
+    public final String REGION;
+
+    /**
+     * The first day the rates apply.
+     */
+    public final LocalDate EFFECTIVE;
+
+    private final int[] basisPoints;
+
+    TaxTable(String region, LocalDate effective, int[] basisPoints) {
+        if(basisPoints.length != ProductType.values().length)
+            throw new IllegalArgumentException("Every ProductType needs a rate");
+
+        this.REGION = region;
+        this.EFFECTIVE = effective;
+        this.basisPoints = basisPoints;
+    }
+
+    /**
+     * @param region
+     * @return The rates built into {@link ProductType}, effective from the start of time.
+     */
+    static TaxTable builtIn(String region) {
+        ProductType[] types = ProductType.values();
+        int[] basisPoints = new int[types.length];
+        for(ProductType type : types) {
+            basisPoints[type.ordinal()] = type.getTaxBasisPoints();
+        }
+        return new TaxTable(region, LocalDate.MIN, basisPoints);
+    }
+
+    /**
+     * @param type
+     * @return The tax rate in basis points, e.g. 2000 for 20%.
+     */
+    public int getBasisPoints(ProductType type) {
+        return basisPoints[type.ordinal()];
+    }
+
+    /**
+     * @see ProductType#getTaxCost(long)
+     * @param type
+     * @param itemPrice The price in minor units.
+     * @return The tax in minor units.
+     */
+    public long getTaxCost(ProductType type, long itemPrice) {
+        return Pricing.percentageOf(itemPrice, basisPoints[type.ordinal()]);
+    }
+
+    /**
+     * @see ProductType#taxedPrice(long)
+     * @param type
+     * @param itemPrice The price in minor units.
+     * @return The price with tax added, in minor units.
+     */
+    public long taxedPrice(ProductType type, long itemPrice) {
+        return Pricing.withTax(itemPrice, basisPoints[type.ordinal()]);
+    }
+
+    /**
+     * @return A copy of the rates, for building the next table from.
+     */
+    int[] copyBasisPoints() {
+        return basisPoints.clone();
+    }
+
+    boolean sameRates(TaxTable other) {
+        return other != null && Arrays.equals(basisPoints, other.basisPoints);
+    }
+
+    @Override
+    public String toString() {
+        return REGION + " from " + EFFECTIVE;
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.venomousinc.studies.storefront.user;
+
+import com.github.venomousinc.studies.storefront.store.Pricing;
+import com.github.venomousinc.studies.storefront.store.ProductInventory;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.TaxRegion;
+import com.github.venomousinc.studies.storefront.store.TaxTable;
+
+import java.math.BigDecimal;
+
+/**
+ * A single {@link ProductItem} in a {@link User}'s basket, and how many of it they are buying.
+ * <p>
+ * The unit prices are taken when the line is created, so the basket total does not move if the
+ * Product's discount or its Inventory's tax rates change while it is in the basket.
+ */
+
+public class BasketLine {
+
+    public final ProductItem PRODUCT;
+
+    /**
+     * The {@link ProductInventory} holding this line's stock reservation, or null if the units were not reserved.
+     */
+    public final ProductInventory INVENTORY;
+
+    /**
+     * The discounted price of one unit, without VAT, in minor units.
+     */
+    private final long unitPrice;
+
+    /**
+     * The VAT charged on one unit, in minor units.
+     */
+    private final long unitTax;
+
+    private int quantity;
+
+    /**
+     * How many of the units basket-level Promotions make free, as last worked out by the {@link User}.
+     */
+    private int freeUnits;
+
+    BasketLine(ProductItem product, ProductInventory inventory) {
+        this.PRODUCT = product;
+        this.INVENTORY = inventory;
+        this.unitPrice = product.getPriceMinorUnits(true, false);
+        TaxTable taxes = inventory != null ? inventory.getTaxTable() : TaxRegion.DEFAULT.getTable();
+        this.unitTax = taxes.getTaxCost(product.TYPE, unitPrice);
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    int getFreeUnits() {
+        return freeUnits;
+    }
+
+    void setFreeUnits(int freeUnits) {
+        this.freeUnits = freeUnits;
+    }
+
+    /**
+     * @param withVAT Should VAT be calculated into the output?
+     * @return The price of one unit in minor units.
+     */
+    public long getUnitPriceMinorUnits(boolean withVAT) {
+        return withVAT ? unitPrice + unitTax : unitPrice;
+    }
+
+    /**
+     * @return The VAT of one unit in minor units.
+     */
+    public long getUnitTaxMinorUnits() {
+        return unitTax;
+    }
+
+    /**
+     * @param withVAT Should VAT be calculated into the output?
+     * @return The price of the whole line.
+     */
+    public BigDecimal getTotal(boolean withVAT) {
+        return Pricing.toBigDecimal(getUnitPriceMinorUnits(withVAT) * quantity);
+    }
+
+    /**
+     * @return The VAT of the whole line.
+     */
+    public BigDecimal getTax() {
+        return Pricing.toBigDecimal(unitTax * quantity);
+    }
+}
@@ -0,0 +1,262 @@
+package com.github.venomousinc.studies.storefront.user;
+
+import com.github.venomousinc.studies.storefront.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signs {@link User}s in, hashing passwords on its own bounded pool of threads.
+ * <p>
+ * A login with a username that has not been seen before registers it, as {@link User#createUser(String, String)} does.
+ * Password hashing is deliberately slow, so it never runs on the caller's thread: a burst of logins queues up here,
+ * and once the queue is full further logins fail fast with a {@link RejectedExecutionException} rather than taking
+ * threads from everything else.
+ * <p>
+ * A successful login is remembered for a short while as a keyed HMAC of the username and password, so signing in
+ * again with the same credentials skips the hash. The key is random per process, so the cache can't be used to
+ * test guesses offline.
+ */
+
+public class LoginService implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( LoginService.class );
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_CACHE_SECONDS = 300;
+    public static final int MAXIMUM_CACHED = 100000;
+
+    private static final String CACHE_MAC = "HmacSHA256";
+
+    /**
+     * Encoded {@link PasswordHasher} hashes by username.
+     */
+    private final ConcurrentHashMap<String, String> accounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Verified> verified = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor hashers;
+    private final int iterations;
+    private final long cacheNanos;
+    private final SecretKeySpec cacheKey;
+    private final ThreadLocal<Mac> mac;
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    /** From a login being queued to its hash starting. */
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram hashTime = new LatencyHistogram();
+
+    public LoginService() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_QUEUE_CAPACITY,
+                PasswordHasher.DEFAULT_ITERATIONS, DEFAULT_CACHE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param threads The number of passwords hashed at once, keep it below the number of cores.
+     * @param queueCapacity The most logins waiting to be hashed.
+     * @param iterations The {@link PasswordHasher} iterations for new accounts.
+     * @param cacheDuration How long a verified login is remembered, 0 to never skip the hash.
+     * @param unit
+     */
+    public LoginService(int threads, int queueCapacity, int iterations, long cacheDuration, TimeUnit unit) {
+        this.iterations = iterations;
+        this.cacheNanos = unit.toNanos(cacheDuration);
+
+        AtomicInteger count = new AtomicInteger();
+        this.hashers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, CACHE_MAC);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(CACHE_MAC);
+                mac.init(cacheKey);
+                return mac;
+            } catch(GeneralSecurityException e) {
+                throw new IllegalStateException(CACHE_MAC + " is not available", e);
+            }
+        });
+    }
+
+    /**
+     * @param username
+     * @param password
+     * @return Completes with the User, or null if the username is invalid or the password is wrong.
+     *         Completes exceptionally with a {@link RejectedExecutionException} if too many logins are already waiting.
+     */
+    public CompletableFuture<User> login(String username, String password) {
+        if(!User.validUsername(username) || password == null)
+            return CompletableFuture.completedFuture(null);
+
+        long now = System.nanoTime();
+        byte[] digest = cacheNanos > 0 ? digest(username, password) : null;
+        Verified cached = digest == null ? null : verified.get(username);
+        if(cached != null && now - cached.expires < 0 && MessageDigest.isEqual(cached.digest, digest)) {
+            cacheHits.increment();
+            return CompletableFuture.completedFuture(new User(username, cached.hash));
+        }
+
+        CompletableFuture<User> result = new CompletableFuture<>();
+        try {
+            hashers.execute(() -> {
+                long start = System.nanoTime();
+                queueWait.record(start - now, TimeUnit.NANOSECONDS);
+                try {
+                    result.complete(verify(username, password, digest));
+                } catch(RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    hashTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Runs on a hasher thread.
+     */
+    private User verify(String username, String password, byte[] digest) {
+        hashed.increment();
+        String hash = accounts.get(username);
+        boolean registered = false;
+        if(hash == null) {
+            String created = PasswordHasher.hash(password, iterations);
+            hash = accounts.putIfAbsent(username, created);
+            if(hash == null) {
+                hash = created;
+                registered = true;
+            }
+        }
+
+        if(!registered && !PasswordHasher.verify(password, hash)) {
+            failed.increment();
+            return null;
+        }
+
+        if(digest != null)
+            remember(username, new Verified(digest, hash, System.nanoTime() + cacheNanos));
+        return new User(username, hash);
+    }
+
+    private void remember(String username, Verified entry) {
+        if(verified.size() >= MAXIMUM_CACHED) {
+            long now = System.nanoTime();
+            for(Iterator<Verified> it = verified.values().iterator(); it.hasNext(); ) {
+                if(now - it.next().expires >= 0)
+                    it.remove();
+            }
+            if(verified.size() >= MAXIMUM_CACHED) {
+                LOGGER.warn(String.format("Login cache full, dropping %d entries", verified.size()));
+                verified.clear();
+            }
+        }
+        verified.put(username, entry);
+    }
+
+    private byte[] digest(String username, String password) {
+        Mac mac = this.mac.get();
+        mac.update(username.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Logins waiting for a hasher thread.
+     */
+    public int getQueued() {
+        return hashers.getQueue().size();
+    }
+
+    /**
+     * @return Logins being hashed right now.
+     */
+    public int getActive() {
+        return hashers.getActiveCount();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return Logins which needed a password hash.
+     */
+    public long getHashed() {
+        return hashed.sum();
+    }
+
+    /**
+     * @return Logins turned away because the queue was full.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return Logins with the wrong password.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getHashTime() {
+        return hashTime;
+    }
+
+    /**
+     * Stops the hasher threads, logins still queued are abandoned.
+     */
+    @Override
+    public void close() {
+        hashers.shutdownNow();
+    }
+
+    /**
+     * A recently verified login.
+     */
+    private static final class Verified {
+        private final byte[] digest;
+        private final String hash;
+        /** From {@link System#nanoTime()}. */
+        private final long expires;
+
+        private Verified(byte[] digest, String hash, long expires) {
+            this.digest = digest;
+            this.hash = hash;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.venomousinc.studies.storefront.user;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Hashes passwords with PBKDF2-HMAC-SHA256 and a random salt.
+ * <p>
+ * Hashes are encoded as {@code pbkdf2-sha256$iterations$salt$hash}, with Base64 salt and hash, so the iteration count
+ * can be raised later without invalidating hashes already stored. Deliberately slow, see {@link LoginService}
+ * for running it away from request threads.
+ */
+
+public final class PasswordHasher {
+
+    public static final int DEFAULT_ITERATIONS = 120000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private PasswordHasher() {
+    }
+
+    /**
+     * @see #hash(String, int)
+     */
+    public static String hash(String password) {
+        return hash(password, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * @param password
+     * @param iterations
+     * @return The encoded hash, with a new salt.
+     */
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.get().nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + '$' + iterations + '$' + base64.encodeToString(salt) + '$'
+                + base64.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Checks a password against a hash from {@link #hash(String)}, in time independent of where they differ.
+     * @param password
+     * @param encoded
+     * @return False if the password doesn't match, or the hash isn't in the expected format.
+     */
+    public static boolean verify(String password, String encoded) {
+        String[] parts = encoded.split("\\$");
+        if(parts.length != 4 || !parts[0].equals(PREFIX))
+            return false;
+
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            return MessageDigest.isEqual(expected, derive(password, salt, iterations));
+        } catch(IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.venomousinc.studies.storefront.user;
+
+/**
+ * A signed-in {@link User} and their basket, held by a {@link SessionManager}.
+ * <p>
+ * Synchronize on the Session while reading or changing its {@link #USER}'s basket, and check {@link #isClosed()}
+ * once inside: a Session may be evicted at any time, and its basket's stock reservations are then released.
+ */
+
+public final class Session {
+
+    public final String ID;
+    public final User USER;
+
+    /**
+     * When the Session was last used, from {@link System#nanoTime()}.
+     */
+    volatile long lastAccess;
+
+    /**
+     * Set on use, cleared by the {@link SessionManager}'s eviction clock, which evicts Sessions it finds unset.
+     */
+    volatile boolean referenced;
+
+    private boolean checkingOut;
+    private boolean closed;
+
+    Session(String id, User user, long now) {
+        this.ID = id;
+        this.USER = user;
+        this.lastAccess = now;
+    }
+
+    /**
+     * @return If the Session was evicted or invalidated, its basket is empty and must not be used.
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return If an order is being recorded, the basket must not change until it is done.
+     */
+    public synchronized boolean isCheckingOut() {
+        return checkingOut;
+    }
+
+    /**
+     * Marks an order as being recorded, the {@link SessionManager} won't evict the Session until it is cleared.
+     * @param checkingOut
+     */
+    public synchronized void setCheckingOut(boolean checkingOut) {
+        this.checkingOut = checkingOut;
+    }
+
+    /**
+     * Releases the basket's stock reservations and closes the Session.
+     * @return False if it was already closed, or can't be closed while checking out.
+     */
+    synchronized boolean close() {
+        if(closed || checkingOut)
+            return false;
+
+        USER.clearBasket();
+        closed = true;
+        return true;
+    }
+}
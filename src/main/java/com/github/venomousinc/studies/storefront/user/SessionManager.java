@@ -0,0 +1,251 @@
+package com.github.venomousinc.studies.storefront.user;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Every open {@link Session}, by id.
+ * <p>
+ * Lookups are a {@link ConcurrentHashMap} read and, at most once per {@link #ACCESS_GRANULARITY_NANOS},
+ * a write to the Session itself, so shoppers on different cores never contend. Sessions idle for longer than
+ * the time-to-live are evicted when next looked up, by {@link #evictExpired()}, or as new Sessions are created.
+ * <p>
+ * Once the maximum is reached, creating a Session evicts one that has not been used recently, chosen by a CLOCK:
+ * Sessions wait in a queue in the order they were created, and one that was used since it was last passed over
+ * goes back to the end of the queue instead of being evicted. Evicting a Session releases its basket's stock.
+ * Sessions closed before the clock reaches them are swept out of it once they outnumber the open ones, so logged out
+ * Sessions and their {@link User}s are not held on to while there are fewer than the maximum.
+ */
+
+public class SessionManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( SessionManager.class );
+
+    /**
+     * How stale a Session's last access may be, so a busy Session is not written to on every lookup.
+     */
+    public static final long ACCESS_GRANULARITY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+    private static final char[] ID_CHARACTERS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ-_".toCharArray();
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    /**
+     * Every open Session, and some closed ones not yet reached, in the order the clock visits them.
+     */
+    private final ConcurrentLinkedQueue<Session> clock = new ConcurrentLinkedQueue<>();
+    /**
+     * How many closed Sessions are still in the {@link #clock}, counted as they close and as they leave it.
+     */
+    private final AtomicInteger closedInClock = new AtomicInteger();
+    /**
+     * Held while the clock is advanced, which is the only place it is polled.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final int maximumSessions;
+    private final long timeToLiveNanos;
+
+    /**
+     * @param maximumSessions The most Sessions open at once.
+     * @param timeToLive How long a Session stays open without being used.
+     * @param unit
+     */
+    public SessionManager(int maximumSessions, long timeToLive, TimeUnit unit) {
+        if(maximumSessions <= 0)
+            throw new IllegalArgumentException("Maximum sessions must be positive: " + maximumSessions);
+
+        this.maximumSessions = maximumSessions;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * Opens a Session for the {@link User}, evicting others if the maximum has been reached.
+     * @param user
+     * @return The new Session, with a random, unguessable {@link Session#ID}.
+     */
+    public Session create(User user) {
+        long now = System.nanoTime();
+        Session session = new Session(newId(), user, now);
+        while(sessions.putIfAbsent(session.ID, session) != null) {
+            session = new Session(newId(), user, now);
+        }
+        clock.add(session);
+
+        if(sessions.size() > maximumSessions) {
+            evictionLock.lock();
+            try {
+                while(sessions.size() > maximumSessions && evictOne(now)) {
+                    // The clock advances until back under the maximum
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        } else if(evictionLock.tryLock()) {
+            try {
+                evictExpiredHead(now);
+                if(closedInClock.get() > sessions.size())
+                    sweepClock();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return session;
+    }
+
+    /**
+     * @param id
+     * @return The open Session, or null if there is none or it has expired.
+     */
+    public Session get(String id) {
+        if(id == null)
+            return null;
+
+        Session session = sessions.get(id);
+        if(session == null)
+            return null;
+
+        long now = System.nanoTime();
+        long idle = now - session.lastAccess;
+        if(idle > timeToLiveNanos) {
+            if(evict(session))
+                return null;
+        }
+
+        if(idle > ACCESS_GRANULARITY_NANOS)
+            session.lastAccess = now;
+        if(!session.referenced)
+            session.referenced = true;
+        return session;
+    }
+
+    /**
+     * Closes the Session, e.g. on logout, releasing its basket's stock.
+     * @param id
+     * @return False if the Session was not open, or is checking out.
+     */
+    public boolean invalidate(String id) {
+        Session session = id == null ? null : sessions.get(id);
+        return session != null && evict(session);
+    }
+
+    /**
+     * @return The number of open Sessions.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Evicts every Session idle for longer than the time-to-live and sweeps closed ones out of the clock, call it periodically.
+     * @return The number evicted.
+     */
+    public int evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for(Session session : sessions.values()) {
+            if(now - session.lastAccess > timeToLiveNanos && evict(session))
+                evicted++;
+        }
+        if(evicted > 0)
+            LOGGER.info(String.format("Evicted %d expired sessions, %d open", evicted, sessions.size()));
+
+        evictionLock.lock();
+        try {
+            sweepClock();
+        } finally {
+            evictionLock.unlock();
+        }
+        return evicted;
+    }
+
+    /**
+     * Advances the clock until one Session is evicted. Must hold the {@link #evictionLock}.
+     * @return False if every Session is busy checking out, and none could be evicted.
+     */
+    private boolean evictOne(long now) {
+        int visited = 0;
+        int limit = 2 * sessions.size() + 1;
+
+        for(Session session = clock.poll(); session != null; session = clock.poll()) {
+            if(session.isClosed()) {
+                closedInClock.decrementAndGet();
+                continue;
+            }
+            if(++visited > limit) {
+                clock.add(session);
+                return false;
+            }
+
+            boolean expired = now - session.lastAccess > timeToLiveNanos;
+            if(session.referenced && !expired) {
+                session.referenced = false;
+                clock.add(session);
+            } else if(evict(session)) {
+                closedInClock.decrementAndGet();
+                return true;
+            } else if(!session.isClosed()) {
+                clock.add(session);
+            } else {
+                closedInClock.decrementAndGet();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops closed Sessions and evicts expired ones from the head of the clock, so they are cleared as new Sessions arrive.
+     * Must hold the {@link #evictionLock}.
+     */
+    private void evictExpiredHead(long now) {
+        for(Session head = clock.peek(); head != null; head = clock.peek()) {
+            if(!head.isClosed() && now - head.lastAccess <= timeToLiveNanos)
+                return;
+
+            clock.poll();
+            if(head.isClosed() || evict(head)) {
+                closedInClock.decrementAndGet();
+            } else {
+                clock.add(head);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops every closed Session from the clock. Must hold the {@link #evictionLock}.
+     */
+    private void sweepClock() {
+        clock.removeIf(session -> {
+            if(!session.isClosed())
+                return false;
+            closedInClock.decrementAndGet();
+            return true;
+        });
+    }
+
+    private boolean evict(Session session) {
+        if(!session.close())
+            return false;
+
+        closedInClock.incrementAndGet();
+        sessions.remove(session.ID, session);
+        return true;
+    }
+
+    private static String newId() {
+        SecureRandom random = RANDOM.get();
+        char[] id = new char[22];
+        for(int i = 0; i < id.length; i++) {
+            id[i] = ID_CHARACTERS[random.nextInt(ID_CHARACTERS.length)];
+        }
+        return new String(id);
+    }
+}
@@ -1,11 +1,21 @@
 package com.github.venomousinc.studies.storefront.user;
 
+import com.github.venomousinc.studies.storefront.metrics.StorefrontMetrics;
+import com.github.venomousinc.studies.storefront.store.CurrencyFormat;
+import com.github.venomousinc.studies.storefront.store.Pricing;
+import com.github.venomousinc.studies.storefront.store.ProductInventory;
 import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.Promotion;
+import com.github.venomousinc.studies.storefront.store.Promotions;
 
 import java.math.BigDecimal;
-import java.text.NumberFormat;
-import java.util.LinkedList;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A Storefront User session.
@@ -16,19 +26,55 @@ public class User {
     private String username;
     private String password;
 
-    private LinkedList<ProductItem> basket;
+    /**
+     * The {@link User}'s basket, one {@link BasketLine} per distinct {@link ProductItem}, by {@link ProductItem#SERIAL_NUMBER}
+     * so that a repriced or discounted copy of a Product finds the line it was added to.
+     */
+    private final LinkedHashMap<Long, BasketLine> basket;
+
+    /**
+     * Running totals of the {@link #basket} in minor units, kept up to date as lines change.
+     */
+    private long basketNet, basketTax;
+    private int basketItemCount;
+
+    /**
+     * Taken off the running totals by basket-level {@link Promotion}s, in minor units.
+     * Worked out again only once {@link #promotionsStale}, or when one of the basket's {@link #inventories}
+     * has changed its {@link Promotions#getVersion()}, so a basket with none running totals in constant time.
+     */
+    private long promotionNet, promotionTax;
+    /**
+     * Set when a line changed that basket-level {@link Promotion}s may apply to, or had free units.
+     */
+    private boolean promotionsStale;
+    /**
+     * The Inventories the basket's lines were reserved from, with how many lines each holds.
+     */
+    private final LinkedHashMap<ProductInventory, InventoryLines> inventories = new LinkedHashMap<>();
+    /**
+     * The lines the last {@link #applyPromotions()} gave free units to, the only ones it has to reset.
+     */
+    private final List<BasketLine> freeLines = new ArrayList<>();
 
     public User(String username, String password) {
         this.username = username;
         this.password = password;
-        this.basket = new LinkedList<>();
+        this.basket = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return this {@link User}'s {@link #basket} of {@link BasketLine}'s, in the order they were first added.
+     */
+    public Collection<BasketLine> getBasket() {
+        return Collections.unmodifiableCollection(basket.values());
     }
 
     /**
-     * @return this {@link User}'s {@link #basket} of {@link ProductItem}'s.
+     * @return The number of units in the {@link #basket}, counting each quantity.
      */
-    public LinkedList<ProductItem> getBasket() {
-        return basket;
+    public int getBasketItemCount() {
+        return basketItemCount;
     }
 
     /**
@@ -40,10 +86,10 @@ public class User {
      * @return
      */
     public String getFormattedBasketTotal(boolean withVAT) {
-        return NumberFormat.getCurrencyInstance().format(getBasketTotal(withVAT));
+        return CurrencyFormat.getInstance().format(getBasketTotalMinorUnits(withVAT));
     }
     /**
-     * Gathers up all the {@link #basket} items, producing a total price for all of the {@link ProductItem}'s
+     * The total price for all of the {@link #basket}'s {@link ProductItem}'s
      * <p>
      * This is not formatted for currency.
      * @see #getFormattedBasketTotal(boolean)
@@ -51,18 +97,48 @@ public class User {
      * @return
      */
     public BigDecimal getBasketTotal(boolean withVAT) {
-        BigDecimal total = BigDecimal.ZERO;
-
-        for(ProductItem item : basket) {
-            total = total.add(item.getPrice(true, withVAT));
-        }
+        return Pricing.toBigDecimal(getBasketTotalMinorUnits(withVAT));
+    }
 
-        return total;
+    /**
+     * @see #getBasketTotal(boolean)
+     * @param withVAT Should VAT be calculated into the output?
+     * @return The basket total in minor units.
+     */
+    public long getBasketTotalMinorUnits(boolean withVAT) {
+        StorefrontMetrics.basketTotalled();
+        applyPromotions();
+        return withVAT ? basketNet - promotionNet + basketTax - promotionTax : basketNet - promotionNet;
     }
 
+    /**
+     * @param withVAT Should VAT be calculated into the output?
+     * @return The amount basket-level {@link Promotion}s take off the basket total, in minor units.
+     */
+    public long getBasketDiscountMinorUnits(boolean withVAT) {
+        applyPromotions();
+        return withVAT ? promotionNet + promotionTax : promotionNet;
+    }
 
     /**
      * The total costs in purely VAT of the users basket.
+     * @return
+     */
+    public BigDecimal getBasketVAT() {
+        return Pricing.toBigDecimal(getBasketVATMinorUnits());
+    }
+
+    /**
+     * @see #getBasketVAT()
+     * @return The basket VAT in minor units.
+     */
+    public long getBasketVATMinorUnits() {
+        applyPromotions();
+        return basketTax - promotionTax;
+    }
+
+    /**
+     * A formatted version of {@link #getBasketVAT()}
      *
      * @see ProductItem
      * @see #getFormattedBasketTotal(boolean)
@@ -70,68 +146,287 @@ public class User {
      * @return
      */
     public String getFormattedBasketVATOnly() {
-        BigDecimal total = BigDecimal.ZERO;
-
-        for(ProductItem item : basket) {
-            total = total.add(item.TYPE.getTaxCost(item.getPrice(true, false)));
-        }
-
-        return NumberFormat.getCurrencyInstance().format(total);
+        return CurrencyFormat.getInstance().format(getBasketVATMinorUnits());
     }
 
     public boolean addToBasket(ProductItem item) {
-        return basket.add(item);
+        return addToBasket(item, 1);
     }
 
     /**
-     * Attempt to create or load the user with the specified Username and Password.
-     * Validates the username, and hashes the password.
-     * @param username
-     * @param password
+     * Adds a quantity of the {@link ProductItem} to its {@link BasketLine} without reserving any stock.
+     * @see #addToBasket(ProductInventory, ProductItem, int)
+     * @param item
+     * @param quantity Must be positive.
      * @return
      */
-    public static User createUser(String username, String password) {
-        /**
-         * TODO: Mock Verify Password & Username, Mock Hash
-         */
-        if(validUsername(username) == false)
-            return null;
-        
-        return new User(username, mockHash(username, password));
+    public boolean addToBasket(ProductItem item, int quantity) {
+        return addToBasket(null, item, quantity);
     }
 
     /**
-     * Hash the users password.
-     * Warning: Mock-up, not for actual use case!
-     * @param username
-     * @param password
+     * Reserves a quantity of the {@link ProductItem} in the {@link ProductInventory}, then adds it to its {@link BasketLine},
+     * creating the line if needed. The reservation is held until {@link #checkout()} or until it is released from the basket.
+     * @see ProductInventory#reserve(ProductItem, int)
+     * @param inventory The Inventory to reserve from, or null to skip the reservation.
+     * @param item
+     * @param quantity Must be positive.
+     * @return False if the item is out of stock, or is already in the basket from another Inventory.
+     */
+    public boolean addToBasket(ProductInventory inventory, ProductItem item, int quantity) {
+        long start = StorefrontMetrics.BASKET_ADDS.start();
+        boolean added = add(inventory, item, quantity);
+        StorefrontMetrics.BASKET_ADDS.stop(start);
+        return added;
+    }
+
+    private boolean add(ProductInventory inventory, ProductItem item, int quantity) {
+        if(item == null || quantity <= 0)
+            return false;
+
+        BasketLine line = basket.get(item.SERIAL_NUMBER);
+        if(line != null && line.INVENTORY != inventory)
+            return false;
+
+        if(inventory != null && !inventory.reserve(item, quantity))
+            return false;
+
+        if(line == null) {
+            line = new BasketLine(item, inventory);
+            basket.put(item.SERIAL_NUMBER, line);
+            if(inventory != null) {
+                InventoryLines lines = inventories.get(inventory);
+                if(lines == null) {
+                    lines = new InventoryLines();
+                    inventories.put(inventory, lines);
+                }
+                lines.count++;
+            }
+        }
+        updateLine(line, line.getQuantity() + quantity);
+        return true;
+    }
+
+    /**
+     * Removes a single unit of the {@link ProductItem} from the {@link #basket}.
+     * @see #removeFromBasket(ProductItem, int)
+     * @param item
      * @return
      */
-    private static String mockHash(String username, String password) {
-        StringBuilder hw = new StringBuilder();
+    public boolean removeFromBasket(ProductItem item) {
+        return removeFromBasket(item, 1);
+    }
+
+    /**
+     * Removes up to the quantity of the {@link ProductItem} from the {@link #basket}, dropping the line once it is empty.
+     * @param item
+     * @param quantity Must be positive.
+     * @return If the item was in the basket.
+     */
+    public boolean removeFromBasket(ProductItem item, int quantity) {
+        if(item == null)
+            return false;
+
+        BasketLine line = basket.get(item.SERIAL_NUMBER);
+        if(line == null || quantity <= 0)
+            return false;
+
+        int removed = Math.min(quantity, line.getQuantity());
+        if(line.INVENTORY != null)
+            line.INVENTORY.release(line.PRODUCT, removed);
+
+        updateLine(line, line.getQuantity() - removed);
+        return true;
+    }
+
+    /**
+     * Empties the {@link #basket}, releasing its stock reservations back to their {@link ProductInventory}.
+     */
+    public void clearBasket() {
+        for(BasketLine line : basket.values()) {
+            if(line.INVENTORY != null)
+                line.INVENTORY.release(line.PRODUCT, line.getQuantity());
+        }
+        resetBasket();
+    }
+
+    /**
+     * Commits every stock reservation in the {@link #basket} as sold, then empties it.
+     * @see ProductInventory#commit(ProductItem, int)
+     * @return False if there was nothing to checkout.
+     */
+    public boolean checkout() {
+        return checkout(true);
+    }
+
+    /**
+     * Empties the {@link #basket} as sold.
+     * @see com.github.venomousinc.studies.storefront.order.BatchCheckout
+     * @param commitStock False if the caller has already committed the basket's reservations, e.g. in bulk for many baskets.
+     * @return False if there was nothing to checkout.
+     */
+    public boolean checkout(boolean commitStock) {
+        if(basket.isEmpty())
+            return false;
+
+        long start = StorefrontMetrics.CHECKOUTS.start();
+        applyPromotions();
+        for(BasketLine line : basket.values()) {
+            if(commitStock && line.INVENTORY != null)
+                line.INVENTORY.commit(line.PRODUCT, line.getQuantity());
+            // Units made free by a Promotion are sold for nothing, so the line adds up to what the order charged
+            int paid = line.getQuantity() - line.getFreeUnits();
+            StorefrontMetrics.sold(line.PRODUCT, line.getQuantity(), line.getUnitPriceMinorUnits(false) * paid,
+                    line.getUnitTaxMinorUnits() * paid);
+        }
+        resetBasket();
+        StorefrontMetrics.CHECKOUTS.stop(start);
+        return true;
+    }
+
+    private void resetBasket() {
+        if(basketItemCount > 0)
+            StorefrontMetrics.basketEmptied();
+        basket.clear();
+        basketNet = 0;
+        basketTax = 0;
+        basketItemCount = 0;
+        inventories.clear();
+        freeLines.clear();
+        promotionNet = 0;
+        promotionTax = 0;
+        promotionsStale = false;
+    }
+
+    /**
+     * Works out what the basket-level {@link Promotion}s of each line's Inventory take off, if anything changed.
+     * A multi-buy makes the cheapest of its qualifying units free, and each unit is only made free once.
+     * Each line's {@link BasketLine#getFreeUnits()} is set to how many of its units were made free.
+     */
+    private void applyPromotions() {
+        if(!promotionsStale) {
+            for(Map.Entry<ProductInventory, InventoryLines> entry : inventories.entrySet()) {
+                if(entry.getKey().getPromotions().getVersion() != entry.getValue().promotionsVersion) {
+                    promotionsStale = true;
+                    break;
+                }
+            }
+            if(!promotionsStale)
+                return;
+        }
 
-        for(char c : password.toCharArray()) {
-            if(c != 0) {
-                hw.append((char) (c - 1));
-                hw.append(c / username.length());
+        promotionNet = 0;
+        promotionTax = 0;
+        for(BasketLine line : freeLines) {
+            line.setFreeUnits(0);
+        }
+        freeLines.clear();
+
+        // The version is read before the rules, so a change in between is picked up by the next total
+        List<ProductInventory> promoted = new ArrayList<>(1);
+        for(Map.Entry<ProductInventory, InventoryLines> entry : inventories.entrySet()) {
+            Promotions promotions = entry.getKey().getPromotions();
+            entry.getValue().promotionsVersion = promotions.getVersion();
+            if(!promotions.getBasketPromotions().isEmpty())
+                promoted.add(entry.getKey());
+        }
+
+        if(!promoted.isEmpty()) {
+            List<BasketLine> lines = new ArrayList<>();
+            for(BasketLine line : basket.values()) {
+                if(promoted.contains(line.INVENTORY))
+                    lines.add(line);
+            }
+            lines.sort(Comparator.comparingLong(line -> line.getUnitPriceMinorUnits(false)));
+            int[] free = new int[lines.size()];
+
+            for(ProductInventory inventory : promoted) {
+                for(Promotion promotion : inventory.getPromotions().getBasketPromotions()) {
+                    int units = 0;
+                    for(BasketLine line : lines) {
+                        if(line.INVENTORY == inventory && promotion.appliesTo(line.PRODUCT))
+                            units += line.getQuantity();
+                    }
+
+                    int remaining = promotion.getFreeUnits(units);
+                    for(int i = 0; i < lines.size() && remaining > 0; i++) {
+                        BasketLine line = lines.get(i);
+                        if(line.INVENTORY != inventory || !promotion.appliesTo(line.PRODUCT))
+                            continue;
+
+                        int taken = Math.min(remaining, line.getQuantity() - free[i]);
+                        if(free[i] == 0 && taken > 0)
+                            freeLines.add(line);
+                        free[i] += taken;
+                        line.setFreeUnits(free[i]);
+                        remaining -= taken;
+                        promotionNet += line.getUnitPriceMinorUnits(false) * taken;
+                        promotionTax += line.getUnitTaxMinorUnits() * taken;
+                    }
+                }
             }
         }
+        promotionsStale = false;
+    }
+
+    /**
+     * Changes the quantity of a line, moving the running totals by the difference.
+     */
+    private void updateLine(BasketLine line, int newQuantity) {
+        int delta = newQuantity - line.getQuantity();
 
-        return hw.toString();
+        basketNet += line.getUnitPriceMinorUnits(false) * delta;
+        basketTax += line.getUnitTaxMinorUnits() * delta;
+        int before = basketItemCount;
+        basketItemCount += delta;
+        if(before == 0 && basketItemCount > 0)
+            StorefrontMetrics.basketOpened();
+        else if(before > 0 && basketItemCount == 0)
+            StorefrontMetrics.basketEmptied();
+
+        if(line.getFreeUnits() > 0
+                || (line.INVENTORY != null && !line.INVENTORY.getPromotions().getBasketPromotions().isEmpty()))
+            promotionsStale = true;
+
+        if(newQuantity == 0) {
+            basket.remove(line.PRODUCT.SERIAL_NUMBER);
+            InventoryLines lines = line.INVENTORY != null ? inventories.get(line.INVENTORY) : null;
+            if(lines != null && --lines.count == 0)
+                inventories.remove(line.INVENTORY);
+        } else {
+            line.setQuantity(newQuantity);
+        }
     }
 
     /**
-     * Characters allowed within the username.
+     * Attempt to create or load the user with the specified Username and Password.
+     * Validates the username, and hashes the password on the calling thread, see {@link LoginService} to avoid that.
+     * @param username
+     * @param password
+     * @return
      */
-    private static Pattern usernamePattern = Pattern.compile("^[\\w\\d]{2,40}$");
+    public static User createUser(String username, String password) {
+        if(validUsername(username) == false)
+            return null;
+
+        return new User(username, PasswordHasher.hash(password));
+    }
 
     /**
-     * Passes the Username through a Pattern Matching Regex, then returns if it's valid or not.
+     * Checks the Username's length and that it only holds ASCII letters, digits and underscores, without a regex.
      * @param username
      * @return
      */
     public static boolean validUsername(String username) {
-        return usernamePattern.matcher(username).matches();
+        if(username == null || username.length() < _USERNAME_MINIMUM_LENGTH || username.length() > _USERNAME_MAXIMUM_LENGTH)
+            return false;
+
+        for(int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if(!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'))
+                return false;
+        }
+        return true;
     }
 
     public static int _USERNAME_MINIMUM_LENGTH = 2;
@@ -155,4 +450,13 @@ public class User {
     public String getPassword() {
         return password;
     }
+
+    /**
+     * The basket's lines from one Inventory.
+     */
+    private static final class InventoryLines {
+        private int count;
+        /** The {@link Promotions#getVersion()} last applied, or -1 if never. */
+        private long promotionsVersion = -1;
+    }
 }
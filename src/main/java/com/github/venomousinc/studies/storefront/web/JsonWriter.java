@@ -0,0 +1,178 @@
+package com.github.venomousinc.studies.storefront.web;
+
+import com.github.venomousinc.studies.storefront.store.Pricing;
+
+/**
+ * Writes JSON straight into a {@link StringBuilder}, one token at a time, without reflection or an object model.
+ * <p>
+ * Commas are added between values automatically, the caller is only responsible for balancing
+ * {@link #beginObject()} / {@link #endObject()} and {@link #beginArray()} / {@link #endArray()}, at most 64 deep.
+ */
+
+public class JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final StringBuilder out;
+
+    /** One bit per open object or array, set once it holds a value and the next one needs a comma. */
+    private long needsComma;
+    private int depth;
+    /** Set after {@link #name(String)}, the next value follows its colon rather than a comma. */
+    private boolean afterName;
+
+    public JsonWriter(StringBuilder out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Writes an object member's name, to be followed by its value.
+     * @param name
+     * @return
+     */
+    public JsonWriter name(String name) {
+        separate();
+        string(name);
+        out.append(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * @param value Written as {@code null} if null.
+     * @return
+     */
+    public JsonWriter value(String value) {
+        separate();
+        if(value == null) {
+            out.append("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        separate();
+        out.append(value);
+        return this;
+    }
+
+    /**
+     * Writes an amount of money as a decimal number, e.g. {@code 1234} as {@code 12.34}.
+     * @see Pricing#MINOR_UNIT_SCALE
+     * @param minorUnits
+     * @return
+     */
+    public JsonWriter money(long minorUnits) {
+        separate();
+        if(minorUnits < 0) {
+            out.append('-');
+        }
+        long amount = Math.abs(minorUnits);
+        out.append(amount / 100).append('.');
+        int minor = (int) (amount % 100);
+        out.append((char) ('0' + minor / 10)).append((char) ('0' + minor % 10));
+        return this;
+    }
+
+    /**
+     * @return The StringBuilder being written to.
+     */
+    public StringBuilder getOutput() {
+        return out;
+    }
+
+    private JsonWriter open(char bracket) {
+        if(depth == 64)
+            throw new IllegalStateException("JSON is nested too deeply");
+
+        separate();
+        out.append(bracket);
+        depth++;
+        needsComma &= ~(1L << (depth - 1));
+        return this;
+    }
+
+    private JsonWriter close(char bracket) {
+        if(depth == 0)
+            throw new IllegalStateException("Nothing to close");
+
+        depth--;
+        out.append(bracket);
+        return this;
+    }
+
+    /**
+     * Writes the comma before a value, unless it is the first in its object or array, or follows a name.
+     */
+    private void separate() {
+        if(afterName) {
+            afterName = false;
+            return;
+        }
+        if(depth == 0)
+            return;
+
+        long bit = 1L << (depth - 1);
+        if((needsComma & bit) != 0) {
+            out.append(',');
+        } else {
+            needsComma |= bit;
+        }
+    }
+
+    private void string(String value) {
+        out.append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        out.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF])
+                                .append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
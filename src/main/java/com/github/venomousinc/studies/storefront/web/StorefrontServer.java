@@ -0,0 +1,724 @@
+package com.github.venomousinc.studies.storefront.web;
+
+import com.github.venomousinc.studies.storefront.Storefront;
+import com.github.venomousinc.studies.storefront.metrics.LatencyHistogram;
+import com.github.venomousinc.studies.storefront.metrics.SalesAnalytics;
+import com.github.venomousinc.studies.storefront.metrics.SalesTotals;
+import com.github.venomousinc.studies.storefront.metrics.StorefrontMetrics;
+import com.github.venomousinc.studies.storefront.order.OrderJournal;
+import com.github.venomousinc.studies.storefront.order.OrderRecord;
+import com.github.venomousinc.studies.storefront.store.MappedCatalog;
+import com.github.venomousinc.studies.storefront.store.ProductInventory;
+import com.github.venomousinc.studies.storefront.store.ProductItem;
+import com.github.venomousinc.studies.storefront.store.ProductPage;
+import com.github.venomousinc.studies.storefront.store.ProductType;
+import com.github.venomousinc.studies.storefront.store.StockLevel;
+import com.github.venomousinc.studies.storefront.store.TaxTable;
+import com.github.venomousinc.studies.storefront.user.BasketLine;
+import com.github.venomousinc.studies.storefront.user.LoginService;
+import com.github.venomousinc.studies.storefront.user.Session;
+import com.github.venomousinc.studies.storefront.user.SessionManager;
+import com.github.venomousinc.studies.storefront.user.User;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A JSON API over HTTP for shopping at a {@link Storefront}, on the JDK's built-in {@link HttpServer}.
+ * <p>
+ * Requests are handled on a fixed pool of worker threads with a bounded queue. Once the queue is full the server's
+ * dispatcher thread handles the request itself, which stops it accepting connections until it is done, so overload
+ * backs up into the listen backlog rather than growing the queue without limit.
+ * <p>
+ * Checkouts wait for the {@link OrderJournal} without holding a worker, the response is sent once the order is on disk.
+ * <pre>
+ * GET    /api/categories                          ProductTypes in stock, with their Product counts
+ * GET    /api/products?type=&amp;q=&amp;limit=&amp;cursor=   Products of a type, matching a search, or both
+ * GET    /api/products?type=&amp;sort=price&amp;cursor=   Products of a type, cheapest first
+ * GET    /api/products?type=&amp;minPrice=&amp;maxPrice=  Products of a type in a price range in minor units with tax, cheapest first
+ * POST   /api/sessions                            Starts a session from a form body of username= and password=, returning its id
+ * DELETE /api/sessions                            Ends the session, releasing its basket's stock
+ * GET    /api/basket                              The basket and its totals
+ * POST   /api/basket?serial=&amp;quantity=             Adds to the basket, reserving stock
+ * DELETE /api/basket?serial=&amp;quantity=             Removes from the basket, releasing stock
+ * POST   /api/checkout                            Records the order and empties the basket
+ * GET    /api/stats                               Request count and latency percentiles
+ * GET    /api/sales?type=                         Units, revenue and VAT sold, all-time and over the last minute, hour and day
+ * </pre>
+ * Basket and checkout requests identify their session with the {@value #SESSION_HEADER} header.
+ * Credentials are only read from the request body, never the URL, which ends up in access logs.
+ * Product listings without a search are paged, the {@value #NEXT_CURSOR_HEADER} header holds the cursor for the next page.
+ */
+
+public class StorefrontServer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( StorefrontServer.class );
+
+    public static final String SESSION_HEADER = "X-Session";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_MAXIMUM_SESSIONS = 100000;
+    public static final long DEFAULT_SESSION_MINUTES = 30;
+
+    /** The most Products listed by one request. */
+    public static final int MAXIMUM_LIMIT = 1000;
+
+    /** The largest form body read, in bytes. */
+    public static final int MAXIMUM_FORM_BYTES = 4096;
+
+    private static final ProductType[] TYPES = ProductType.values();
+
+    private final Storefront storefront;
+    private final OrderJournal journal;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final SessionManager sessions;
+    private final LoginService logins;
+    /** Evicts expired sessions in the background. */
+    private final ScheduledExecutorService housekeeping;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    /**
+     * The {@link Route} for each method of each path, every path has one context.
+     */
+    private final Map<String, Map<String, Route>> routes = new HashMap<>();
+
+    /**
+     * @param storefront
+     * @param journal Where checkouts are recorded, or null to not record them.
+     * @param address
+     * @param threads The number of worker threads.
+     * @param queueCapacity The most requests waiting for a worker.
+     * @throws IOException If the address could not be bound.
+     */
+    public StorefrontServer(Storefront storefront, OrderJournal journal, InetSocketAddress address, int threads, int queueCapacity) throws IOException {
+        this(storefront, journal, new SessionManager(DEFAULT_MAXIMUM_SESSIONS, DEFAULT_SESSION_MINUTES, TimeUnit.MINUTES),
+                new LoginService(), address, threads, queueCapacity);
+    }
+
+    /**
+     * @param storefront
+     * @param journal Where checkouts are recorded, or null to not record them.
+     * @param sessions
+     * @param logins Closed along with the server.
+     * @param address
+     * @param threads The number of worker threads.
+     * @param queueCapacity The most requests waiting for a worker.
+     * @throws IOException If the address could not be bound.
+     */
+    public StorefrontServer(Storefront storefront, OrderJournal journal, SessionManager sessions, LoginService logins,
+                            InetSocketAddress address, int threads, int queueCapacity) throws IOException {
+        this.storefront = storefront;
+        this.journal = journal;
+        this.sessions = sessions;
+        this.logins = logins;
+        this.housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storefront-http-housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new WorkerFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.prestartAllCoreThreads();
+
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        route("/api/categories", "GET", this::categories);
+        route("/api/products", "GET", this::products);
+        route("/api/sessions", "POST", this::createSession);
+        route("/api/sessions", "DELETE", this::endSession);
+        route("/api/basket", "GET", this::basket);
+        route("/api/basket", "POST", this::addToBasket);
+        route("/api/basket", "DELETE", this::removeFromBasket);
+        route("/api/checkout", "POST", this::checkout);
+        route("/api/stats", "GET", this::stats);
+        route("/api/sales", "GET", this::sales);
+    }
+
+    public void start() {
+        housekeeping.scheduleWithFixedDelay(sessions::evictExpired, 30, 30, TimeUnit.SECONDS);
+        server.start();
+        LOGGER.info(String.format("Serving %s on %s", storefront.getName(), server.getAddress()));
+    }
+
+    /**
+     * @return The bound address, useful when started on port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return The time taken to handle each request, from being picked up by a worker to its response being sent.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Stops accepting requests, gives those in progress a second to finish, then stops the workers and the {@link LoginService}.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        housekeeping.shutdown();
+        logins.close();
+    }
+
+    private void route(String path, String method, Route route) {
+        Map<String, Route> methods = routes.get(path);
+        if(methods == null) {
+            methods = new HashMap<>();
+            routes.put(path, methods);
+            Map<String, Route> byMethod = methods;
+            server.createContext(path, exchange -> handle(exchange, byMethod));
+        }
+        methods.put(method, route);
+    }
+
+    private void handle(HttpExchange exchange, Map<String, Route> methods) {
+        long start = System.nanoTime();
+        JsonWriter json = new JsonWriter(new StringBuilder(256));
+        CompletableFuture<Integer> status;
+
+        try {
+            Route route = methods.get(exchange.getRequestMethod());
+            if(route == null)
+                throw new ApiException(405, "Method not allowed");
+            if(!exchange.getHttpContext().getPath().equals(exchange.getRequestURI().getPath()))
+                throw new ApiException(404, "Not found");
+
+            status = route.handle(new Request(exchange, json));
+        } catch(ApiException e) {
+            json = error(e.getMessage());
+            status = CompletableFuture.completedFuture(e.STATUS);
+        } catch(RuntimeException e) {
+            LOGGER.error(String.format("Request ERROR: %s %s: %s", exchange.getRequestMethod(), exchange.getRequestURI().getPath(), e));
+            json = error("Internal error");
+            status = CompletableFuture.completedFuture(500);
+        }
+
+        JsonWriter body = json;
+        BiConsumer<Integer, Throwable> reply = (code, failure) -> {
+            if(failure != null) {
+                respond(exchange, 500, error("Internal error"));
+            } else {
+                respond(exchange, code, body);
+            }
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        };
+        // Most routes have already answered, anything still pending is replied to on a worker
+        if(status.isDone()) {
+            status.whenComplete(reply);
+        } else {
+            status.whenCompleteAsync(reply, executor);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonWriter json) {
+        byte[] body = json.getOutput().toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        try(OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, body.length);
+            out.write(body);
+        } catch(IOException e) {
+            LOGGER.debug(String.format("Response ERROR: %s", e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static JsonWriter error(String message) {
+        return new JsonWriter(new StringBuilder(64)).beginObject().name("error").value(message).endObject();
+    }
+
+    private CompletableFuture<Integer> categories(Request request) {
+        ProductInventory.Snapshot snapshot = storefront.getInventory().getSnapshot();
+        EnumSet<ProductType> stockTypes = snapshot.getStockTypes();
+        JsonWriter json = request.json.beginArray();
+
+        if(stockTypes != null) {
+            for(ProductType type : stockTypes) {
+                json.beginObject()
+                        .name("type").value(type.name())
+                        .name("name").value(type.fixedName())
+                        .name("products").value(snapshot.getProducts(type).size())
+                        .endObject();
+            }
+        }
+        json.endArray();
+        return ok();
+    }
+
+    private CompletableFuture<Integer> products(Request request) throws ApiException {
+        String type = request.parameter("type");
+        String query = request.parameter("q");
+        int limit = request.intParameter("limit", 100, 1, MAXIMUM_LIMIT);
+
+        ProductType productType = null;
+        if(type != null) {
+            productType = parseType(type);
+        }
+
+        String minPrice = request.parameter("minPrice");
+        String maxPrice = request.parameter("maxPrice");
+        boolean byPrice = "price".equals(request.parameter("sort"));
+        if((byPrice || minPrice != null || maxPrice != null) && (productType == null || query != null))
+            throw new ApiException(400, "Price listings need a type and no search");
+
+        List<ProductItem> products;
+        if(query != null) {
+            products = storefront.getInventory().search(query, productType, limit);
+        } else if(minPrice != null || maxPrice != null) {
+            products = storefront.getInventory().getPriceRange(productType, request.longParameter("minPrice", 0),
+                    request.longParameter("maxPrice", Long.MAX_VALUE), limit);
+        } else {
+            ProductPage page;
+            try {
+                page = byPrice
+                        ? storefront.getInventory().getPageByPrice(productType, request.parameter("cursor"), limit)
+                        : storefront.getInventory().getPage(productType, request.parameter("cursor"), limit);
+            } catch(IllegalArgumentException e) {
+                throw new ApiException(400, e.getMessage());
+            }
+            if(page.hasNext())
+                request.exchange.getResponseHeaders().set(NEXT_CURSOR_HEADER, page.getNextCursor());
+            products = page.getItems();
+        }
+
+        JsonWriter json = request.json.beginArray();
+        TaxTable taxes = storefront.getInventory().getTaxTable();
+        for(int i = 0; i < products.size() && i < limit; i++) {
+            writeProduct(json, products.get(i), taxes);
+        }
+        json.endArray();
+        return ok();
+    }
+
+    private void writeProduct(JsonWriter json, ProductItem item, TaxTable taxes) {
+        StockLevel stock = storefront.getInventory().getStock(item);
+        json.beginObject()
+                .name("serial").value(item.SERIAL_NUMBER)
+                .name("name").value(item.NAME)
+                .name("description").value(item.DESCRIPTION)
+                .name("type").value(item.TYPE.name())
+                .name("price").money(item.getPriceMinorUnits(true, false))
+                .name("priceWithVat").money(item.getPriceMinorUnits(true, taxes));
+        if(stock != null)
+            json.name("available").value(stock.getAvailable());
+        json.endObject();
+    }
+
+    /**
+     * Responds once the {@link LoginService} has checked the password, without holding a worker while it is hashed.
+     */
+    private CompletableFuture<Integer> createSession(Request request) throws ApiException {
+        if(request.parameter("password") != null)
+            throw new ApiException(400, "Send the password in the request body");
+
+        Map<String, String> form = request.form();
+        String username = form.get("username");
+        if(username == null || username.isEmpty())
+            throw new ApiException(400, "Missing parameter: username");
+        String password = form.containsKey("password") ? form.get("password") : "";
+        if(!User.validUsername(username))
+            throw new ApiException(400, User.usernameHelper());
+
+        return logins.login(username, password).handle((user, failure) -> {
+            if(failure != null) {
+                boolean busy = failure instanceof RejectedExecutionException || failure.getCause() instanceof RejectedExecutionException;
+                request.error(busy ? "Too many logins, please try again shortly" : "Internal error");
+                return busy ? 503 : 500;
+            }
+            if(user == null) {
+                request.error("Wrong password");
+                return 401;
+            }
+
+            Session session = sessions.create(user);
+            request.json.beginObject().name("session").value(session.ID).name("username").value(user.getUsername()).endObject();
+            return 201;
+        });
+    }
+
+    private CompletableFuture<Integer> endSession(Request request) throws ApiException {
+        Session session = request.session();
+        synchronized (session) {
+            checkOpen(session);
+            checkNotCheckingOut(session);
+            // Closing takes the same lock, so only a checkout can stop it
+            if(!sessions.invalidate(session.ID))
+                throw new ApiException(409, "Checkout in progress");
+        }
+        request.json.beginObject().endObject();
+        return ok();
+    }
+
+    private CompletableFuture<Integer> basket(Request request) throws ApiException {
+        Session session = request.session();
+        synchronized (session) {
+            checkOpen(session);
+            writeBasket(request.json, session.USER);
+        }
+        return ok();
+    }
+
+    private CompletableFuture<Integer> addToBasket(Request request) throws ApiException {
+        Session session = request.session();
+        ProductItem item = request.product();
+        int quantity = request.intParameter("quantity", 1, 1, Integer.MAX_VALUE);
+
+        synchronized (session) {
+            checkOpen(session);
+            checkNotCheckingOut(session);
+            if(!session.USER.addToBasket(storefront.getInventory(), item, quantity))
+                throw new ApiException(409, "Not enough stock");
+            writeBasket(request.json, session.USER);
+        }
+        return ok();
+    }
+
+    private CompletableFuture<Integer> removeFromBasket(Request request) throws ApiException {
+        Session session = request.session();
+        ProductItem item = request.product();
+        int quantity = request.intParameter("quantity", Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
+
+        synchronized (session) {
+            checkOpen(session);
+            checkNotCheckingOut(session);
+            if(!session.USER.removeFromBasket(item, quantity))
+                throw new ApiException(404, "Not in the basket");
+            writeBasket(request.json, session.USER);
+        }
+        return ok();
+    }
+
+    private CompletableFuture<Integer> checkout(Request request) throws ApiException {
+        Session session = request.session();
+        OrderRecord record;
+
+        synchronized (session) {
+            checkOpen(session);
+            checkNotCheckingOut(session);
+            if(session.USER.getBasketItemCount() == 0)
+                throw new ApiException(409, "Nothing to checkout");
+
+            record = OrderRecord.fromBasket(session.USER, System.currentTimeMillis());
+            writeBasket(request.json, session.USER);
+            if(journal == null) {
+                session.USER.checkout();
+                return ok();
+            }
+            session.setCheckingOut(true);
+        }
+
+        return journal.append(record).handleAsync((done, failure) -> {
+            synchronized (session) {
+                session.setCheckingOut(false);
+                if(failure != null) {
+                    request.error("The order could not be recorded, please try again");
+                    return 503;
+                }
+                session.USER.checkout();
+                return 200;
+            }
+        }, executor);
+    }
+
+    private CompletableFuture<Integer> stats(Request request) {
+        request.json.beginObject()
+                .name("requests").value(latency.getCount())
+                .name("queued").value(executor.getQueue().size())
+                .name("activeWorkers").value(executor.getActiveCount())
+                .name("sessions").value(sessions.size())
+                .name("latencyMicros").beginObject()
+                    .name("mean").value(latency.getMeanMicros())
+                    .name("p50").value(latency.getPercentileMicros(50))
+                    .name("p99").value(latency.getPercentileMicros(99))
+                    .name("p999").value(latency.getPercentileMicros(99.9))
+                    .name("max").value(latency.getMaxMicros())
+                .endObject()
+                .name("logins").beginObject()
+                    .name("queued").value(logins.getQueued())
+                    .name("active").value(logins.getActive())
+                    .name("hashed").value(logins.getHashed())
+                    .name("cacheHits").value(logins.getCacheHits())
+                    .name("rejected").value(logins.getRejected())
+                    .name("failed").value(logins.getFailed())
+                    .name("queueWaitP99Micros").value(logins.getQueueWait().getPercentileMicros(99))
+                    .name("hashP99Micros").value(logins.getHashTime().getPercentileMicros(99))
+                .endObject()
+                .endObject();
+        return ok();
+    }
+
+    /**
+     * Sales from every checkout in the process, not only this server's.
+     */
+    private CompletableFuture<Integer> sales(Request request) throws ApiException {
+        String type = request.parameter("type");
+        ProductType productType = type != null ? parseType(type) : null;
+        SalesAnalytics sales = SalesAnalytics.getInstance();
+
+        request.json.beginObject();
+        writeSales(request.json.name("total"), productType != null ? sales.getTotals(productType) : sales.getTotals());
+        for(SalesAnalytics.Window window : SalesAnalytics.Window.values()) {
+            writeSales(request.json.name(window.name().toLowerCase()), sales.getTotals(productType, window));
+        }
+        request.json.endObject();
+        return ok();
+    }
+
+    private static void writeSales(JsonWriter json, SalesTotals totals) {
+        json.beginObject()
+                .name("units").value(totals.getUnits())
+                .name("net").value(totals.getNetMinorUnits())
+                .name("vat").value(totals.getVatMinorUnits())
+                .endObject();
+    }
+
+    private static void writeBasket(JsonWriter json, User user) {
+        json.beginObject().name("lines").beginArray();
+        for(BasketLine line : user.getBasket()) {
+            json.beginObject()
+                    .name("serial").value(line.PRODUCT.SERIAL_NUMBER)
+                    .name("name").value(line.PRODUCT.NAME)
+                    .name("quantity").value(line.getQuantity())
+                    .name("total").money(line.getUnitPriceMinorUnits(false) * line.getQuantity())
+                    .name("vat").money(line.getUnitTaxMinorUnits() * line.getQuantity())
+                    .endObject();
+        }
+        json.endArray()
+                .name("items").value(user.getBasketItemCount())
+                .name("discount").money(user.getBasketDiscountMinorUnits(false))
+                .name("total").money(user.getBasketTotalMinorUnits(false))
+                .name("vat").money(user.getBasketVATMinorUnits())
+                .name("totalWithVat").money(user.getBasketTotalMinorUnits(true))
+                .endObject();
+    }
+
+    private static void checkOpen(Session session) throws ApiException {
+        if(session.isClosed())
+            throw new ApiException(401, "Session has ended");
+    }
+
+    private static void checkNotCheckingOut(Session session) throws ApiException {
+        if(session.isCheckingOut())
+            throw new ApiException(409, "Checkout in progress");
+    }
+
+    private static ProductType parseType(String type) throws ApiException {
+        for(ProductType candidate : TYPES) {
+            if(candidate.name().equalsIgnoreCase(type))
+                return candidate;
+        }
+        throw new ApiException(400, "Unknown type: " + type);
+    }
+
+    private static CompletableFuture<Integer> ok() {
+        return CompletableFuture.completedFuture(200);
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        /**
+         * Writes the response body to the request's {@link JsonWriter}.
+         * @return Completes with the status code once the response can be sent.
+         */
+        CompletableFuture<Integer> handle(Request request) throws ApiException;
+    }
+
+    private final class Request {
+        private final HttpExchange exchange;
+        private final Map<String, String> parameters;
+        private final JsonWriter json;
+
+        private Request(HttpExchange exchange, JsonWriter json) throws ApiException {
+            this.exchange = exchange;
+            this.json = json;
+            this.parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        }
+
+        private String parameter(String name) {
+            return parameters.get(name);
+        }
+
+        private String requiredParameter(String name) throws ApiException {
+            String value = parameters.get(name);
+            if(value == null || value.isEmpty())
+                throw new ApiException(400, "Missing parameter: " + name);
+            return value;
+        }
+
+        private int intParameter(String name, int defaultValue, int minimum, int maximum) throws ApiException {
+            String value = parameters.get(name);
+            if(value == null)
+                return defaultValue;
+            try {
+                int parsed = Integer.parseInt(value);
+                if(parsed < minimum || parsed > maximum)
+                    throw new ApiException(400, String.format("%s must be between %d and %d", name, minimum, maximum));
+                return parsed;
+            } catch(NumberFormatException e) {
+                throw new ApiException(400, "Not a number: " + name);
+            }
+        }
+
+        private long longParameter(String name, long defaultValue) throws ApiException {
+            String value = parameters.get(name);
+            if(value == null)
+                return defaultValue;
+            try {
+                return Long.parseLong(value);
+            } catch(NumberFormatException e) {
+                throw new ApiException(400, "Not a number: " + name);
+            }
+        }
+
+        /**
+         * @return The parameters of a form-encoded request body.
+         * @throws ApiException If the body is too large or can't be read.
+         */
+        private Map<String, String> form() throws ApiException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+            byte[] buffer = new byte[1024];
+            try(InputStream in = exchange.getRequestBody()) {
+                for(int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    body.write(buffer, 0, read);
+                    if(body.size() > MAXIMUM_FORM_BYTES)
+                        throw new ApiException(413, "Request body too large");
+                }
+            } catch(IOException e) {
+                throw new ApiException(400, "Unreadable request body");
+            }
+            return parseQuery(new String(body.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Replaces anything written so far with an error body.
+         */
+        private void error(String message) {
+            json.getOutput().setLength(0);
+            json.beginObject().name("error").value(message).endObject();
+        }
+
+        private Session session() throws ApiException {
+            String id = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+            Session session = id == null ? null : sessions.get(id);
+            if(session == null)
+                throw new ApiException(401, "Missing or unknown " + SESSION_HEADER);
+            return session;
+        }
+
+        private ProductItem product() throws ApiException {
+            String serial = requiredParameter("serial");
+            ProductItem item;
+            try {
+                item = storefront.getInventory().getProduct(Long.parseLong(serial));
+            } catch(NumberFormatException e) {
+                throw new ApiException(400, "Not a serial number: " + serial);
+            }
+            if(item == null)
+                throw new ApiException(404, "No product with serial " + serial);
+            return item;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws ApiException {
+        if(query == null || query.isEmpty())
+            return Collections.emptyMap();
+
+        Map<String, String> parameters = new HashMap<>();
+        try {
+            for(String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if(equals < 0) {
+                    parameters.put(URLDecoder.decode(pair, "UTF-8"), "");
+                } else {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        } catch(UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new ApiException(400, "Malformed query");
+        }
+        return parameters;
+    }
+
+    private static final class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int STATUS;
+
+        private ApiException(int status, String message) {
+            super(message, null, false, false);
+            this.STATUS = status;
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "storefront-http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Serves a catalog written by {@link MappedCatalog#write(Storefront, java.nio.file.Path)}.
+     * @param args {@code catalog [port [threads]]}
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1) {
+            System.out.println("Usage: StorefrontServer <catalog> [port [threads]]");
+            return;
+        }
+        StorefrontMetrics.register();
+        Storefront storefront = MappedCatalog.open(Paths.get(args[0])).toStorefront();
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 2;
+
+        OrderJournal journal = new OrderJournal(Paths.get("orders.journal"));
+        StorefrontServer server = new StorefrontServer(storefront, journal, new InetSocketAddress("localhost", port), threads, DEFAULT_QUEUE_CAPACITY);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                journal.close();
+            } catch(IOException e) {
+                LOGGER.error( String.format("Journal ERROR: %s", e.getMessage()));
+            }
+        }));
+        server.start();
+    }
+}
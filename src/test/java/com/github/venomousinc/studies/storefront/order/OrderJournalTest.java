@@ -0,0 +1,195 @@
+package com.github.venomousinc.studies.storefront.order;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link OrderJournal} replays every record that reached the disk intact, and nothing after the first that didn't.
+ */
+
+public class OrderJournalTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static OrderRecord record(String username, long net) {
+        return new OrderRecord(username, 1_500_000_000_000L + net, new long[] { 5_000_000_001L, 5_000_000_002L },
+                new int[] { 1, 3 }, net, net / 5);
+    }
+
+    private static void await(OrderJournal journal, OrderRecord record) throws Exception {
+        journal.append(record).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static List<OrderRecord> replay(Path file) throws IOException {
+        List<OrderRecord> records = new ArrayList<>();
+        OrderJournal.replay(file, records::add);
+        return records;
+    }
+
+    private static List<String> usernames(List<OrderRecord> records) {
+        List<String> usernames = new ArrayList<>();
+        for(OrderRecord record : records) {
+            usernames.add(record.USERNAME);
+        }
+        return usernames;
+    }
+
+    private static List<String> usernames(String... usernames) {
+        List<String> list = new ArrayList<>();
+        for(String username : usernames) {
+            list.add(username);
+        }
+        return list;
+    }
+
+    @Test
+    public void replaysWhatWasAppended() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("orders.journal");
+        OrderRecord order = new OrderRecord("Zo\u00eb", 1_500_000_000_123L, new long[] { 5_000_000_001L, 5_000_000_002L, 5_000_000_003L },
+                new int[] { 2, 1, 7 }, 1234, 247);
+
+        try(OrderJournal journal = new OrderJournal(file)) {
+            await(journal, order);
+            await(journal, record("second", 500));
+        }
+
+        List<OrderRecord> records = replay(file);
+        assertEquals(2, records.size());
+
+        OrderRecord replayed = records.get(0);
+        assertEquals("Zo\u00eb", replayed.USERNAME);
+        assertEquals(1_500_000_000_123L, replayed.TIMESTAMP);
+        assertEquals(3, replayed.getLineCount());
+        assertArrayEquals(new long[] { 5_000_000_001L, 5_000_000_002L, 5_000_000_003L },
+                new long[] { replayed.getSerialNumber(0), replayed.getSerialNumber(1), replayed.getSerialNumber(2) });
+        assertArrayEquals(new long[] { 2, 1, 7 },
+                new long[] { replayed.getQuantity(0), replayed.getQuantity(1), replayed.getQuantity(2) });
+        assertEquals(1234, replayed.NET);
+        assertEquals(247, replayed.VAT);
+        assertEquals("second", records.get(1).USERNAME);
+    }
+
+    @Test
+    public void tornTailIsDroppedAndTruncatedOnOpen() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("orders.journal");
+        try(OrderJournal journal = new OrderJournal(file)) {
+            await(journal, record("first", 100));
+            await(journal, record("second", 200));
+        }
+        long intact = Files.size(file);
+
+        // Half an entry header, as a crash mid-write would leave it
+        Files.write(file, new byte[] { 0, 0, 1 }, StandardOpenOption.APPEND);
+        assertEquals(usernames("first", "second"), usernames(replay(file)));
+        assertEquals(intact, OrderJournal.replay(file, record -> { }));
+
+        try(OrderJournal journal = new OrderJournal(file)) {
+            assertEquals(intact, Files.size(file));
+            await(journal, record("third", 300));
+        }
+        assertEquals(usernames("first", "second", "third"), usernames(replay(file)));
+    }
+
+    @Test
+    public void replayStopsAtACorruptEntry() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("orders.journal");
+        OrderRecord first = record("first", 100);
+        try(OrderJournal journal = new OrderJournal(file)) {
+            await(journal, first);
+            await(journal, record("second", 200));
+            await(journal, record("third", 300));
+        }
+
+        // Flip a byte in the second entry's payload, past its length and CRC
+        long offset = 8 + first.encodedSize() + 8 + 3;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, offset);
+            one.put(0, (byte) ~one.get(0));
+            one.rewind();
+            channel.write(one, offset);
+        }
+
+        assertEquals(usernames("first"), usernames(replay(file)));
+        assertEquals(8 + first.encodedSize(), OrderJournal.replay(file, record -> { }));
+    }
+
+    @Test
+    public void failedGroupIsCutOffBeforeTheNext() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("orders.journal");
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch queued = new CountDownLatch(1);
+
+        // Holds the writer inside its group until the next group is queued up behind it
+        OrderRecord blocker = new OrderRecord("blocker", 1L, new long[0], new int[0], 0, 0) {
+            @Override
+            void writeTo(ByteBuffer out) {
+                writing.countDown();
+                try {
+                    queued.await();
+                } catch(InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                super.writeTo(out);
+            }
+        };
+        // Big enough that the writer flushes it to the file before reaching the bad record
+        OrderRecord large = new OrderRecord("large", 2L, new long[4000], new int[4000], 0, 0);
+        OrderRecord bad = new OrderRecord("bad", 3L, new long[0], new int[0], 0, 0) {
+            @Override
+            void writeTo(ByteBuffer out) {
+                throw new IllegalStateException("Cannot encode");
+            }
+        };
+
+        try(OrderJournal journal = new OrderJournal(file)) {
+            journal.append(blocker);
+            assertTrue(writing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            CompletableFuture<Void> largeAppend = journal.append(large);
+            CompletableFuture<Void> badAppend = journal.append(bad);
+            queued.countDown();
+            try {
+                badAppend.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                fail("The bad record was written");
+            } catch(ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            // The whole group fails, though the large record was already in the file
+            assertTrue(largeAppend.isCompletedExceptionally());
+            await(journal, record("after", 100));
+        }
+
+        assertEquals(usernames("blocker", "after"), usernames(replay(file)));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void appendAfterCloseFails() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("orders.journal");
+        OrderJournal journal = new OrderJournal(file);
+        journal.close();
+
+        journal.append(record("late", 100)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
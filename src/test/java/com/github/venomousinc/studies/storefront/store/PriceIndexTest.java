@@ -0,0 +1,122 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link PriceIndex} merges a {@link SharedCatalog}'s presorted Products with a store's own, cheapest first and then
+ * by serial, honouring the store's overrides.
+ */
+
+public class PriceIndexTest {
+
+    private static final ProductType TYPE = ProductType.FRUIT_AND_VEGETABLE;
+
+    private ProductItem apple, banana, cherry, damson;
+    private PriceIndex index;
+
+    private static ProductItem item(String name, String price) {
+        return new ProductItem(name, null, TYPE, new BigDecimal(price));
+    }
+
+    @Before
+    public void setUp() {
+        // Banana and cherry share a price, banana's lower serial puts it first
+        apple = item("Apple", "1.00");
+        banana = item("Banana", "2.00");
+        cherry = item("Cherry", "2.00");
+        damson = item("Damson", "3.00");
+
+        ProductItem[][] categories = new ProductItem[ProductType.values().length][];
+        int[] sizes = new int[categories.length];
+        categories[TYPE.ordinal()] = new ProductItem[] { damson, cherry, apple, banana };
+        sizes[TYPE.ordinal()] = 4;
+
+        ProductItem[][] sorted = PriceIndex.sort(categories, sizes);
+        index = new PriceIndex(sorted, PriceIndex.prices(sorted));
+    }
+
+    private List<ProductItem> all(Overrides overrides) {
+        return index.collect(TYPE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, overrides);
+    }
+
+    @Test
+    public void baseAloneIsSortedByPriceThenSerial() {
+        assertEquals(Arrays.asList(apple, banana, cherry, damson), all(Overrides.EMPTY));
+    }
+
+    @Test
+    public void localProductsAreMergedIn() {
+        ProductItem elderberry = item("Elderberry", "2.00");
+        ProductItem fig = item("Fig", "0.50");
+        ProductItem biscuit = new ProductItem("Biscuit", null, ProductType.BISCUIT, new BigDecimal("0.10"));
+        index.put(elderberry);
+        index.put(fig);
+        index.put(biscuit);
+
+        assertEquals(Arrays.asList(fig, apple, banana, cherry, elderberry, damson), all(Overrides.EMPTY));
+    }
+
+    @Test
+    public void overriddenCatalogProductsAreReplaced() {
+        ProductItem dearBanana = new ProductItem(banana.SERIAL_NUMBER, banana.NAME, null, TYPE, new BigDecimal("4.00"));
+        index.put(dearBanana);
+        Overrides overrides = Overrides.EMPTY.with(banana.SERIAL_NUMBER, dearBanana);
+
+        assertEquals(Arrays.asList(apple, cherry, damson, dearBanana), all(overrides));
+    }
+
+    @Test
+    public void removedCatalogProductsAreSkipped() {
+        Overrides overrides = Overrides.EMPTY.with(apple.SERIAL_NUMBER, null).with(damson.SERIAL_NUMBER, null);
+
+        assertEquals(Arrays.asList(banana, cherry), all(overrides));
+    }
+
+    @Test
+    public void resumesAfterAPriceAndSerial() {
+        ProductItem elderberry = item("Elderberry", "2.00");
+        index.put(elderberry);
+        long price = PriceIndex.price(banana);
+
+        assertEquals(Arrays.asList(cherry, elderberry, damson),
+                index.collect(TYPE, price, banana.SERIAL_NUMBER, Long.MAX_VALUE, 10, Overrides.EMPTY));
+        assertEquals(Arrays.asList(elderberry, damson),
+                index.collect(TYPE, price, cherry.SERIAL_NUMBER, Long.MAX_VALUE, 10, Overrides.EMPTY));
+        assertEquals(Arrays.asList(banana, cherry, elderberry, damson),
+                index.collect(TYPE, price, Long.MIN_VALUE, Long.MAX_VALUE, 10, Overrides.EMPTY));
+    }
+
+    @Test
+    public void stopsAtThePriceBoundAndLimit() {
+        ProductItem elderberry = item("Elderberry", "2.00");
+        index.put(elderberry);
+
+        assertEquals(Arrays.asList(apple, banana, cherry, elderberry),
+                index.collect(TYPE, Long.MIN_VALUE, Long.MIN_VALUE, PriceIndex.price(cherry), 10, Overrides.EMPTY));
+        assertEquals(Arrays.asList(apple, banana),
+                index.collect(TYPE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, 2, Overrides.EMPTY));
+        assertEquals(Arrays.asList(damson),
+                index.collect(TYPE, PriceIndex.price(damson), Long.MIN_VALUE, PriceIndex.price(damson), 10, Overrides.EMPTY));
+    }
+
+    @Test
+    public void repricingRefilesTheProduct() {
+        ProductItem grape = item("Grape", "2.50");
+        index.put(grape);
+        assertEquals(Arrays.asList(apple, banana, cherry, grape, damson), all(Overrides.EMPTY));
+
+        grape.setDiscount(BigDecimal.valueOf(80));
+        index.put(grape);
+        assertEquals(Arrays.asList(grape, apple, banana, cherry, damson), all(Overrides.EMPTY));
+
+        index.remove(grape);
+        assertEquals(Arrays.asList(apple, banana, cherry, damson), all(Overrides.EMPTY));
+    }
+}
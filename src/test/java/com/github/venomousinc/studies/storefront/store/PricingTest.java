@@ -0,0 +1,236 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import com.github.venomousinc.studies.storefront.user.User;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link Pricing} rounds every partial penny once, halves away from zero, and each {@link ProductType} charges its VAT rate.
+ */
+
+public class PricingTest {
+
+    private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
+
+    /**
+     * @return The VAT percentage of every {@link ProductType}, as the regulations list them.
+     */
+    private static Map<ProductType, BigDecimal> rates() {
+        Map<ProductType, BigDecimal> rates = new EnumMap<>(ProductType.class);
+        for(ProductType type : ProductType.values()) {
+            rates.put(type, BigDecimal.ZERO);
+        }
+        for(ProductType type : new ProductType[] { ProductType.MICROWAVE_MEAL, ProductType.PROCESSED_FOOD,
+                ProductType.CLOTHES, ProductType.ESSENTIAL_OIL, ProductType.STANDARD_OTHER, ProductType.BISCUIT,
+                ProductType.ICECREAM, ProductType.CANDY, ProductType.CHOCOLATE_BAR, ProductType.SPORT_BEVERAGE,
+                ProductType.NUTRITIONAL_BEVERAGE }) {
+            rates.put(type, BigDecimal.valueOf(20));
+        }
+        rates.put(ProductType.CHILDRENS_CAR_SEAT, BigDecimal.valueOf(5));
+        rates.put(ProductType.CHILDRENS_BOOSTER_SEAT, BigDecimal.valueOf(5));
+        rates.put(ProductType.GAMBLING, BigDecimal.valueOf(15));
+        rates.put(ProductType.SUGAR_BEVERAGE, BigDecimal.valueOf(22));
+        rates.put(ProductType.ALCOHOLIC_BEVERAGE, BigDecimal.valueOf(25));
+        rates.put(ProductType.SMOKING_PRODUCT, BigDecimal.valueOf(30));
+        return rates;
+    }
+
+    /**
+     * The BigDecimal arithmetic the long path replaced, the discount and tax of the original
+     * {@link ProductItem#getPrice(boolean, boolean)} and {@link ProductType#taxedPrice(BigDecimal)},
+     * rounded half up to the penny after the discount and after the tax, which is where the long path rounds.
+     */
+    private static BigDecimal baselineNet(BigDecimal rrp, BigDecimal discount) {
+        return rrp.subtract(rrp.multiply(discount).divide(ONE_HUNDRED)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal baselineTax(BigDecimal net, BigDecimal rate) {
+        return net.multiply(rate).divide(ONE_HUNDRED).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static long pence(BigDecimal price) {
+        return price.movePointRight(2).longValueExact();
+    }
+
+    @Test
+    public void toMinorUnitsRoundsHalfUp() {
+        assertEquals(0, Pricing.toMinorUnits(new BigDecimal("0.004")));
+        assertEquals(1, Pricing.toMinorUnits(new BigDecimal("0.005")));
+        assertEquals(200, Pricing.toMinorUnits(new BigDecimal("1.995")));
+        assertEquals(199, Pricing.toMinorUnits(new BigDecimal("1.9949")));
+        assertEquals(-1, Pricing.toMinorUnits(new BigDecimal("-0.005")));
+        assertEquals(60, Pricing.toMinorUnits(new BigDecimal("0.6")));
+    }
+
+    @Test
+    public void toBasisPointsRoundsHalfUp() {
+        assertEquals(2000, Pricing.toBasisPoints(BigDecimal.valueOf(20)));
+        assertEquals(1750, Pricing.toBasisPoints(new BigDecimal("17.5")));
+        assertEquals(1235, Pricing.toBasisPoints(new BigDecimal("12.345")));
+        assertEquals(1234, Pricing.toBasisPoints(new BigDecimal("12.3449")));
+    }
+
+    @Test
+    public void percentageOfRoundsHalfAwayFromZero() {
+        // 10% of 15p is 1.5p, of 14p is 1.4p, of 5p is 0.5p
+        assertEquals(2, Pricing.percentageOf(15, 1000));
+        assertEquals(1, Pricing.percentageOf(14, 1000));
+        assertEquals(1, Pricing.percentageOf(5, 1000));
+        assertEquals(0, Pricing.percentageOf(4, 1000));
+        assertEquals(-2, Pricing.percentageOf(-15, 1000));
+        assertEquals(-1, Pricing.percentageOf(-14, 1000));
+    }
+
+    @Test
+    public void discountedPriceRoundsHalfUp() {
+        // 5% off 9486.50 is 9012.175 exactly, off 9486.49 it is 9012.1655
+        assertEquals(901218, Pricing.withDiscount(948650, 500));
+        assertEquals(901217, Pricing.withDiscount(948649, 500));
+        assertEquals(-901218, Pricing.withDiscount(-948650, 500));
+    }
+
+    @Test
+    public void zeroPercentDiscountKeepsThePrice() {
+        assertEquals(1999, Pricing.withDiscount(1999, 0));
+
+        ProductItem item = new ProductItem("Tea", null, ProductType.TEA_AND_COFFEE, new BigDecimal("19.99"));
+        item.setDiscount(BigDecimal.ZERO);
+        assertEquals(1999, item.getPriceMinorUnits(true, false));
+        assertEquals(item.getPriceMinorUnits(false, true), item.getPriceMinorUnits(true, true));
+    }
+
+    @Test
+    public void oneHundredPercentDiscountIsFree() {
+        assertEquals(0, Pricing.withDiscount(1999, (int) Pricing.ONE_HUNDRED_PERCENT));
+
+        ProductItem item = new ProductItem("Wine", null, ProductType.ALCOHOLIC_BEVERAGE, new BigDecimal("19.99"));
+        item.setDiscount(BigDecimal.valueOf(100));
+        assertEquals(0, item.getPriceMinorUnits(true, false));
+        assertEquals(0, item.getPriceMinorUnits(true, true));
+        assertEquals(2499, item.getPriceMinorUnits(false, true));
+    }
+
+    @Test
+    public void discountIsTakenBeforeTax() {
+        // 12.5% off 9.99 is 8.74125, rounded to 8.74; 20% VAT on that is 1.748, rounded to 1.75
+        ProductItem item = new ProductItem("Biscuits", null, ProductType.BISCUIT, new BigDecimal("9.99"));
+        item.setDiscount(new BigDecimal("12.5"));
+        assertEquals(874, item.getPriceMinorUnits(true, false));
+        assertEquals(1049, item.getPriceMinorUnits(true, true));
+    }
+
+    @Test
+    public void everyTypeChargesItsRate() {
+        Map<ProductType, BigDecimal> rates = rates();
+        for(ProductType type : ProductType.values()) {
+            BigDecimal rate = rates.get(type);
+            assertEquals(type.name(), rate.movePointRight(2).intValue(), type.getTaxBasisPoints());
+            assertEquals(type.name(), rate.movePointRight(2).intValue(), TaxRegion.DEFAULT.getTable().getBasisPoints(type));
+
+            // 1999p lands on a partial penny at every non-zero rate
+            long tax = BigDecimal.valueOf(1999).multiply(rate).movePointLeft(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+            assertEquals(type.name(), tax, type.getTaxCost(1999));
+            assertEquals(type.name(), 1999 + tax, type.taxedPrice(1999));
+
+            ProductItem item = new ProductItem("Item", null, type, new BigDecimal("19.99"));
+            assertEquals(type.name(), 1999 + tax, item.getPriceMinorUnits(false, true));
+        }
+    }
+
+    @Test
+    public void everyPriceMatchesTheBigDecimalPath() {
+        Map<ProductType, BigDecimal> rates = rates();
+        for(ProductType type : ProductType.values()) {
+            BigDecimal rate = rates.get(type);
+            for(int pence = 0; pence <= 5000; pence++) {
+                BigDecimal rrp = BigDecimal.valueOf(pence, 2);
+                assertMatches(new ProductItem("Item", null, type, rrp), rrp, BigDecimal.ZERO, rate);
+            }
+        }
+    }
+
+    @Test
+    public void everyDiscountMatchesTheBigDecimalPath() {
+        Map<ProductType, BigDecimal> rates = rates();
+        BigDecimal[] discounts = { new BigDecimal("5"), new BigDecimal("10"), new BigDecimal("12.5"), new BigDecimal("15"),
+                new BigDecimal("17.5"), new BigDecimal("20"), new BigDecimal("33"), new BigDecimal("33.33"),
+                new BigDecimal("50"), new BigDecimal("66.67"), new BigDecimal("75"), new BigDecimal("99.99"),
+                BigDecimal.valueOf(100) };
+        Random random = new Random(2002);
+
+        for(ProductType type : ProductType.values()) {
+            for(BigDecimal discount : discounts) {
+                for(int i = 0; i < 200; i++) {
+                    BigDecimal rrp = BigDecimal.valueOf(random.nextInt(1_000_000), 2);
+                    ProductItem item = new ProductItem("Item", null, type, rrp);
+                    item.setDiscount(discount);
+                    assertMatches(item, rrp, discount, rates.get(type));
+                }
+            }
+            for(int i = 0; i < 2000; i++) {
+                BigDecimal rrp = BigDecimal.valueOf(random.nextInt(1_000_000), 2);
+                BigDecimal discount = BigDecimal.valueOf(random.nextInt(10_001), 2);
+                ProductItem item = new ProductItem("Item", null, type, rrp);
+                item.setDiscount(discount);
+                assertMatches(item, rrp, discount, rates.get(type));
+            }
+        }
+    }
+
+    private static void assertMatches(ProductItem item, BigDecimal rrp, BigDecimal discount, BigDecimal rate) {
+        String message = item.TYPE + " " + rrp + " less " + discount + "%";
+        BigDecimal net = baselineNet(rrp, discount);
+        BigDecimal taxed = net.add(baselineTax(net, rate));
+
+        assertEquals(message, pence(rrp), item.getPriceMinorUnits(false, false));
+        assertEquals(message, pence(rrp.add(baselineTax(rrp, rate))), item.getPriceMinorUnits(false, true));
+        assertEquals(message, pence(net), item.getPriceMinorUnits(true, false));
+        assertEquals(message, pence(taxed), item.getPriceMinorUnits(true, true));
+        assertEquals(message, 0, taxed.compareTo(item.getPrice(true, true)));
+        assertEquals(message, pence(baselineTax(net, rate)), item.TYPE.getTaxCost(item.getPriceMinorUnits(true, false)));
+    }
+
+    @Test
+    public void basketTotalsMatchTheBigDecimalPath() {
+        Map<ProductType, BigDecimal> rates = rates();
+        ProductType[] types = ProductType.values();
+        Random random = new Random(2020);
+
+        for(int basket = 0; basket < 500; basket++) {
+            User user = new User("shopper", "password");
+            BigDecimal net = BigDecimal.ZERO, tax = BigDecimal.ZERO;
+            List<ProductItem> items = new ArrayList<>();
+
+            for(int line = random.nextInt(20); line >= 0; line--) {
+                ProductType type = types[random.nextInt(types.length)];
+                BigDecimal rrp = BigDecimal.valueOf(random.nextInt(100_000), 2);
+                BigDecimal discount = random.nextBoolean() ? BigDecimal.ZERO : BigDecimal.valueOf(random.nextInt(10_001), 2);
+                ProductItem item = new ProductItem("Item " + line, null, type, rrp);
+                item.setDiscount(discount);
+                items.add(item);
+
+                BigDecimal unitNet = baselineNet(rrp, discount);
+                BigDecimal unitTax = baselineTax(unitNet, rates.get(type));
+                for(int units = 1 + random.nextInt(3); units > 0; units--) {
+                    user.addToBasket(item);
+                    net = net.add(unitNet);
+                    tax = tax.add(unitTax);
+                }
+            }
+
+            String message = "basket of " + items.size();
+            assertEquals(message, pence(net), user.getBasketTotalMinorUnits(false));
+            assertEquals(message, pence(net.add(tax)), user.getBasketTotalMinorUnits(true));
+            assertEquals(message, 0, net.add(tax).compareTo(user.getBasketTotal(true)));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SerialIndex} leaves a removed entry's key behind as a tombstone, which lookups probe past and resizes drop.
+ */
+
+public class SerialIndexTest {
+
+    private static ProductItem item() {
+        return item(SerialNumbers.next());
+    }
+
+    private static ProductItem item(long serial) {
+        return new ProductItem(serial, "Product " + serial, null, ProductType.STANDARD_OTHER, BigDecimal.ONE);
+    }
+
+    @Test
+    public void putAndGet() {
+        SerialIndex index = new SerialIndex();
+        ProductItem item = item();
+
+        assertTrue(index.put(item));
+        assertSame(item, index.get(item.SERIAL_NUMBER));
+        assertNull(index.get(SerialNumbers.next()));
+    }
+
+    @Test
+    public void anotherProductCannotTakeALiveSerial() {
+        SerialIndex index = new SerialIndex();
+        ProductItem item = item();
+        index.put(item);
+
+        assertTrue(index.put(item));
+        assertFalse(index.put(item(item.SERIAL_NUMBER)));
+        assertSame(item, index.get(item.SERIAL_NUMBER));
+    }
+
+    @Test
+    public void removedSerialIsNotFoundButCanBeReused() {
+        SerialIndex index = new SerialIndex();
+        ProductItem item = item();
+        index.put(item);
+
+        index.remove(item);
+        assertNull(index.get(item.SERIAL_NUMBER));
+
+        ProductItem replacement = item(item.SERIAL_NUMBER);
+        assertTrue(index.put(replacement));
+        assertSame(replacement, index.get(item.SERIAL_NUMBER));
+    }
+
+    @Test
+    public void removingAnotherProductWithTheSerialLeavesTheEntry() {
+        SerialIndex index = new SerialIndex();
+        ProductItem item = item();
+        index.put(item);
+
+        index.remove(item(item.SERIAL_NUMBER));
+        assertSame(item, index.get(item.SERIAL_NUMBER));
+    }
+
+    @Test
+    public void lookupsProbePastTombstones() {
+        SerialIndex index = new SerialIndex();
+        List<ProductItem> items = new ArrayList<>();
+        for(int i = 0; i < 40; i++) {
+            ProductItem item = item();
+            items.add(item);
+            index.put(item);
+        }
+
+        // Every other entry becomes a tombstone, the rest must still be found behind them
+        for(int i = 0; i < items.size(); i += 2) {
+            index.remove(items.get(i));
+        }
+        for(int i = 0; i < items.size(); i++) {
+            ProductItem item = items.get(i);
+            if(i % 2 == 0) {
+                assertNull(index.get(item.SERIAL_NUMBER));
+            } else {
+                assertSame(item, index.get(item.SERIAL_NUMBER));
+            }
+        }
+    }
+
+    @Test
+    public void churnThroughResizesKeepsLiveEntries() {
+        SerialIndex index = new SerialIndex();
+        List<ProductItem> live = new ArrayList<>();
+
+        // Far more puts than the table holds, removing most of each batch so tombstones pile up between resizes
+        for(int round = 0; round < 200; round++) {
+            for(int i = 0; i < 50; i++) {
+                ProductItem item = item();
+                assertTrue(index.put(item));
+                live.add(item);
+            }
+            int batch = live.size() - 50;
+            for(int i = 0; i < 45; i++) {
+                ProductItem removed = live.remove(batch);
+                index.remove(removed);
+                assertNull(index.get(removed.SERIAL_NUMBER));
+            }
+        }
+
+        for(ProductItem item : live) {
+            assertSame(item, index.get(item.SERIAL_NUMBER));
+        }
+    }
+}
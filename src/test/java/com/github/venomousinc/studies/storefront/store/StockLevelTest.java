@@ -0,0 +1,121 @@
+package com.github.venomousinc.studies.storefront.store;
+
+import com.github.venomousinc.studies.storefront.Storefront;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StockLevel} never sells more than it holds, however many shoppers race for the last units.
+ */
+
+public class StockLevelTest {
+
+    @Test
+    public void reserveOnlyWhenEnoughAreAvailable() {
+        StockLevel level = new StockLevel(5);
+
+        assertTrue(level.reserve(3));
+        assertFalse(level.reserve(3));
+        assertTrue(level.reserve(2));
+        assertFalse(level.reserve(1));
+        assertFalse(level.reserve(0));
+        assertEquals(0, level.getAvailable());
+        assertEquals(5, level.getReserved());
+    }
+
+    @Test
+    public void releaseAndCommitMoveReservedUnits() {
+        StockLevel level = new StockLevel(10);
+        level.reserve(6);
+
+        level.release(2);
+        assertEquals(6, level.getAvailable());
+        assertEquals(4, level.getReserved());
+
+        level.commit(4);
+        assertEquals(6, level.getAvailable());
+        assertEquals(0, level.getReserved());
+
+        level.restock(4);
+        assertEquals(10, level.getAvailable());
+    }
+
+    @Test
+    public void racingShoppersNeverOversell() throws InterruptedException {
+        int units = 10_000;
+        int threads = 8;
+        StockLevel level = new StockLevel(units);
+        AtomicInteger reserved = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> shoppers = new ArrayList<>(threads);
+        for(int i = 0; i < threads; i++) {
+            int quantity = 1 + i % 3;
+            Thread shopper = new Thread(() -> {
+                try {
+                    start.await();
+                } catch(InterruptedException e) {
+                    return;
+                }
+                while(level.reserve(quantity)) {
+                    reserved.addAndGet(quantity);
+                }
+            });
+            shopper.start();
+            shoppers.add(shopper);
+        }
+        start.countDown();
+        for(Thread shopper : shoppers) {
+            shopper.join();
+        }
+
+        assertEquals(units, reserved.get() + level.getAvailable());
+        assertEquals(reserved.get(), level.getReserved());
+        assertTrue(level.getAvailable() < 3);
+    }
+
+    @Test
+    public void setAvailableKeepsReservations() {
+        StockLevel level = new StockLevel(5);
+        level.reserve(3);
+
+        assertEquals(2, level.setAvailable(10));
+        assertEquals(10, level.getAvailable());
+        assertEquals(3, level.getReserved());
+
+        level.release(3);
+        assertEquals(13, level.getAvailable());
+        assertEquals(0, level.getReserved());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setAvailableRejectsNegativeStock() {
+        new StockLevel(5).setAvailable(-1);
+    }
+
+    @Test
+    public void setStockAdjustsTheTrackedLevel() {
+        Storefront storefront = new Storefront("Stock Test");
+        ProductItem item = storefront.addItem("Banana", null, ProductType.FRUIT_AND_VEGETABLE, new BigDecimal("0.60"), null, 5);
+        ProductInventory inventory = storefront.getInventory();
+        StockLevel level = inventory.getStock(item);
+
+        assertTrue(inventory.reserve(item, 4));
+        assertSame(level, inventory.setStock(item, 20));
+        assertEquals(4, level.getReserved());
+
+        inventory.commit(item, 4);
+        assertEquals(20, level.getAvailable());
+        assertEquals(0, level.getReserved());
+    }
+}